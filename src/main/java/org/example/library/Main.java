@@ -21,6 +21,9 @@ public class Main {
 
         // Use main database
         FileDatabase.useMainDatabase();
+        FileDatabase.useJournal(true);
+        FileDatabase.useProcessLock(true);
+        FileDatabase.useBackgroundCheckpoints(true);
         bookService.addObserver(new EmailNotifier());
 
         while (true) {
@@ -33,6 +36,7 @@ public class Main {
             switch (choice) {
                 case 1 -> login();
                 case 2 -> {
+                    FileDatabase.checkpoint();
                     System.out.println("Goodbye ❤️");
                     return;
                 }
@@ -6,6 +6,7 @@ import org.example.library.utils.Input;
 import org.example.library.services.EmailService1;
 import org.example.library.services.BookService;
 import org.example.library.services.UserService;
+import org.example.library.storage.FileDatabase;
 
 public class AdminMenu extends LibrarianMenu {
 
@@ -23,7 +24,8 @@ public class AdminMenu extends LibrarianMenu {
             System.out.println("5) Unregister User");
             System.out.println("6) Send Reminders");
             System.out.println("7) View Email Log");
-            System.out.println("8) Logout");
+            System.out.println("8) Export Database (readable JSON)");
+            System.out.println("9) Logout");
 
             int choice = Input.number("Choose: ");
 
@@ -36,7 +38,8 @@ public class AdminMenu extends LibrarianMenu {
                 case 5 -> unregisterUser(currentUser);
                 case 6 -> sendReminders();
                 case 7 -> showEmailLog();
-                case 8 -> { return; }
+                case 8 -> exportDatabase();
+                case 9 -> { return; }
 
                 default -> System.out.println("Invalid option!");
             }
@@ -101,4 +104,18 @@ public class AdminMenu extends LibrarianMenu {
             System.out.println("- " + msg);
         }
     }
+
+    // =====================================================
+    //            EXPORT DATABASE (pretty JSON)
+    // =====================================================
+    private static void exportDatabase() {
+        String target = Input.text("Export to file (e.g. library-export.json): ");
+
+        try {
+            FileDatabase.exportPretty(target);
+            System.out.println("✔ Database exported to " + target);
+        } catch (RuntimeException e) {
+            System.out.println("❌ Export failed: " + e.getMessage());
+        }
+    }
 }
@@ -2,20 +2,26 @@ package org.example.library.menus;
 
 import org.example.library.models.Book;
 import org.example.library.models.CD;
+import org.example.library.models.ImportReport;
 import org.example.library.models.User;
 import org.example.library.services.BookService;
 import org.example.library.services.CDService;
+import org.example.library.services.ExportService;
+import org.example.library.services.ImportService;
 import org.example.library.utils.Input;
 import org.example.library.storage.FileDatabase;
-import org.json.JSONArray;
+import org.example.library.storage.RecordIndex;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.Map;
 
 public class LibrarianMenu {
 
     private static BookService bookService = new BookService();
     private static CDService cdService = new CDService();  // ⭐ NEW SERVICE
+    private static ImportService importService = new ImportService();
+    private static ExportService exportService = new ExportService();
 
     public static void show(User currentUser) {
 
@@ -27,7 +33,9 @@ public class LibrarianMenu {
             System.out.println("4) Show All Books");
             System.out.println("5) Show All CDs");
             System.out.println("6) Check Overdue Media (Books + CDs)");
-            System.out.println("7) Logout");
+            System.out.println("7) Import Books (CSV/JSONL)");
+            System.out.println("8) Export Catalog (CSV/JSONL)");
+            System.out.println("9) Logout");
 
             int choice = Input.number("Choose: ");
 
@@ -38,7 +46,9 @@ public class LibrarianMenu {
                 case 4 -> showAllBooks();
                 case 5 -> showAllCDs();
                 case 6 -> checkOverdueMedia();
-                case 7 -> { return; }
+                case 7 -> importBooks(currentUser);
+                case 8 -> exportCatalog();
+                case 9 -> { return; }
                 default -> System.out.println("Invalid option!");
             }
         }
@@ -72,21 +82,25 @@ public class LibrarianMenu {
             int option = Input.number("Choose: ");
 
             if (option == 1) {
-                JSONObject db = FileDatabase.load();
-                JSONArray books = db.getJSONArray("books");
+                int addQty = Input.number("Enter quantity to add: ");
+
+                // read and update the quantity in one transaction, so copies
+                // borrowed in the meantime are not overwritten
+                Integer newQty = FileDatabase.runInTransaction(db -> {
+                    JSONObject obj = RecordIndex.find(db, "books", isbn);
+                    if (obj == null) {
+                        return null;
+                    }
 
-                for (int i = 0; i < books.length(); i++) {
-                    JSONObject obj = books.getJSONObject(i);
+                    int qty = obj.getInt("quantity") + addQty;
 
-                    if (obj.getString("isbn").equals(isbn)) {
-                        int addQty = Input.number("Enter quantity to add: ");
-                        int newQty = obj.getInt("quantity") + addQty;
+                    obj.put("quantity", qty);
+                    FileDatabase.saveRecord(db, "books", obj);
+                    return qty;
+                });
 
-                        obj.put("quantity", newQty);
-                        FileDatabase.save(db);
-                        System.out.println("✔ Quantity updated to: " + newQty);
-                        return;
-                    }
+                if (newQty != null) {
+                    System.out.println("✔ Quantity updated to: " + newQty);
                 }
             }
 
@@ -104,9 +118,12 @@ public class LibrarianMenu {
                 int qty = Input.number("Enter quantity: ");
 
                 Book newBook = new Book(title, author, newIsbn, qty, qty > 0);
-                bookService.addBook(newBook);
-
-                System.out.println("✔ New edition added!");
+                try {
+                    bookService.addBook(newBook);
+                    System.out.println("✔ New edition added!");
+                } catch (IllegalArgumentException e) {
+                    System.out.println("❌ " + e.getMessage());
+                }
             }
 
             return;
@@ -118,9 +135,13 @@ public class LibrarianMenu {
         int qty = Input.number("Enter quantity: ");
 
         Book newBook = new Book(title, author, isbn, qty, qty > 0);
-        bookService.addBook(newBook);
-
-        System.out.println("✔ Book added successfully!");
+        try {
+            bookService.addBook(newBook);
+            System.out.println("✔ Book added successfully!");
+        } catch (IllegalArgumentException e) {
+            // added by someone else since the check above
+            System.out.println("❌ " + e.getMessage());
+        }
     }
 
     // ============================
@@ -140,9 +161,60 @@ public class LibrarianMenu {
         int qty = Input.number("Enter quantity: ");
 
         CD cd = new CD(id, title, artist, qty, qty > 0);
-        cdService.addCD(cd);
+        try {
+            cdService.addCD(cd);
+            System.out.println("✔ CD added successfully!");
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
+        }
+    }
+
+    // ============================
+    //       IMPORT BOOKS
+    // ============================
+    private static void importBooks(User currentUser) {
+
+        if (!currentUser.isAdmin() &&
+                !currentUser.getRole().equalsIgnoreCase("librarian")) {
+            System.out.println("❌ Only admin or librarian can import books!");
+            return;
+        }
+
+        String file = Input.text("Enter catalog file (.csv or .jsonl): ");
+
+        try {
+            ImportReport report = importService.importBooks(file);
+
+            if (report.getResumedAt() > 0) {
+                System.out.println("Resumed after row " + report.getResumedAt() + ".");
+            }
+            System.out.println("✔ Imported " + report.getAdded() + " books ("
+                    + report.getDuplicates() + " duplicates, " + report.getRejected() + " rejected) in "
+                    + report.getElapsedMillis() + " ms, "
+                    + String.format("%.0f", report.getRowsPerSecond()) + " rows/s.");
+        } catch (RuntimeException e) {
+            System.out.println("❌ Import stopped: " + e.getMessage());
+            System.out.println("Run it again on the same file to continue where it stopped.");
+        }
+    }
+
+    // ============================
+    //      EXPORT CATALOG
+    // ============================
+    private static void exportCatalog() {
+        String directory = Input.text("Enter export directory: ");
+        String format = Input.text("Format (csv/jsonl): ").trim().toLowerCase();
 
-        System.out.println("✔ CD added successfully!");
+        try {
+            Map<String, Long> rows = exportService.exportAll(directory, format);
+
+            for (Map.Entry<String, Long> table : rows.entrySet()) {
+                System.out.println("- " + table.getKey() + "." + format + ": " + table.getValue() + " rows");
+            }
+            System.out.println("✔ Export completed!");
+        } catch (RuntimeException e) {
+            System.out.println("❌ Export failed: " + e.getMessage());
+        }
     }
 
     // ============================
@@ -13,6 +13,9 @@ import java.time.LocalDate;
 
 public class Book {
 
+    /** Value of {@link #getDueDay()} for a book without a due date. */
+    public static final long NO_DUE_DATE = Long.MIN_VALUE;
+
     private String title;
     private String author;
     private String isbn;
@@ -22,7 +25,7 @@ public class Book {
 
     // Sprint 2 fields
     private boolean borrowed;
-    private LocalDate dueDate;
+    private long dueDay; // epoch day, so overdue checks compare numbers
     private double fine;
 
     /**
@@ -45,7 +48,7 @@ public class Book {
 
         // Sprint 2 defaults
         this.borrowed = false;
-        this.dueDate = null;
+        this.dueDay = NO_DUE_DATE;
         this.fine = 0.0;
     }
 
@@ -71,10 +74,28 @@ public class Book {
         this.quantity = quantity;
         this.available = available;
         this.borrowed = borrowed;
-        this.dueDate = dueDate;
+        setDueDate(dueDate);
         this.fine = fine;
     }
 
+    /**
+     * Copy constructor, so that callers can be handed a book they may
+     * change without affecting anyone else's.
+     *
+     * @param other the book to copy
+     */
+
+    public Book(Book other) {
+        this.title = other.title;
+        this.author = other.author;
+        this.isbn = other.isbn;
+        this.quantity = other.quantity;
+        this.available = other.available;
+        this.borrowed = other.borrowed;
+        this.dueDay = other.dueDay;
+        this.fine = other.fine;
+    }
+
     // Getters
     /** @return the book title */
     public String getTitle() { return title; }
@@ -94,8 +115,13 @@ public class Book {
     /** @return true if book is borrowed */
     public boolean isBorrowed() { return borrowed; }
 
-    /** @return due date for return */
-    public LocalDate getDueDate() { return dueDate; }
+    /** @return due date for return, or null if there is none */
+    public LocalDate getDueDate() {
+        return dueDay == NO_DUE_DATE ? null : LocalDate.ofEpochDay(dueDay);
+    }
+
+    /** @return due date as an epoch day, or {@link #NO_DUE_DATE} */
+    public long getDueDay() { return dueDay; }
 
     /** @return fine amount */
     public double getFine() { return fine; }
@@ -111,7 +137,15 @@ public class Book {
      * Sets the due date for a borrowed book.
      * @param dueDate expected return date
      */
-    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDay = dueDate == null ? NO_DUE_DATE : dueDate.toEpochDay();
+    }
+
+    /**
+     * Sets the due date as an epoch day, as it is stored.
+     * @param dueDay days since 1970-01-01, or {@link #NO_DUE_DATE}
+     */
+    public void setDueDay(long dueDay) { this.dueDay = dueDay; }
 
     /**
      * Updates the fine amount for this book.
@@ -13,6 +13,9 @@ import java.time.LocalDate;
 
 public class CD {
 
+    /** Value of {@link #getDueDay()} for a CD without a due date. */
+    public static final long NO_DUE_DATE = Long.MIN_VALUE;
+
     private String id;
     private String title;
     private String artist;
@@ -21,7 +24,7 @@ public class CD {
 
     // Sprint 5 features
     private boolean borrowed;
-    private LocalDate dueDate;
+    private long dueDay; // epoch day, so overdue checks compare numbers
     private double fine;
     private int borrowedBy;
 
@@ -43,11 +46,30 @@ public class CD {
         this.available = available;
 
         this.borrowed = false;
-        this.dueDate = null;
+        this.dueDay = NO_DUE_DATE;
         this.fine = 0;
         this.borrowedBy = -1;
     }
 
+    /**
+     * Copy constructor, so that callers can be handed a CD they may
+     * change without affecting anyone else's.
+     *
+     * @param other the CD to copy
+     */
+
+    public CD(CD other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.artist = other.artist;
+        this.quantity = other.quantity;
+        this.available = other.available;
+        this.borrowed = other.borrowed;
+        this.dueDay = other.dueDay;
+        this.fine = other.fine;
+        this.borrowedBy = other.borrowedBy;
+    }
+
 
 
     /** @return CD ID */
@@ -68,8 +90,13 @@ public class CD {
     /** @return whether the CD is borrowed */
     public boolean isBorrowed() { return borrowed; }
 
-    /** @return due date of return */
-    public LocalDate getDueDate() { return dueDate; }
+    /** @return due date of return, or null if there is none */
+    public LocalDate getDueDate() {
+        return dueDay == NO_DUE_DATE ? null : LocalDate.ofEpochDay(dueDay);
+    }
+
+    /** @return due date as an epoch day, or {@link #NO_DUE_DATE} */
+    public long getDueDay() { return dueDay; }
 
     /** @return fine amount */
     public double getFine() { return fine; }
@@ -93,7 +120,16 @@ public class CD {
      * @param dueDate LocalDate of due date
      */
     public void setDueDate(LocalDate dueDate) {
-        this.dueDate = dueDate;
+        this.dueDay = dueDate == null ? NO_DUE_DATE : dueDate.toEpochDay();
+    }
+
+    /**
+     * Sets the due date as an epoch day, as it is stored.
+     *
+     * @param dueDay days since 1970-01-01, or {@link #NO_DUE_DATE}
+     */
+    public void setDueDay(long dueDay) {
+        this.dueDay = dueDay;
     }
 
     /**
@@ -0,0 +1,72 @@
+package org.example.library.models;
+
+/**
+ * Summary of one bulk catalog import.
+ *
+ * Rows are counted from where the import started, so an import that
+ * resumed an interrupted one only reports the rows it read itself;
+ * {@link #getResumedAt()} tells how many rows were skipped.
+ *
+ * @version 1.0
+ */
+public class ImportReport {
+
+    private final long rowsRead;
+    private final long added;
+    private final long duplicates;
+    private final long rejected;
+    private final long resumedAt;
+    private final long elapsedMillis;
+
+    /**
+     * @param rowsRead      data rows read by this run
+     * @param added         books added to the catalog
+     * @param duplicates    rows skipped because their ISBN already exists
+     * @param rejected      rows skipped because they are incomplete or malformed
+     * @param resumedAt     rows skipped because an earlier run committed them
+     * @param elapsedMillis duration of the import
+     */
+    public ImportReport(long rowsRead, long added, long duplicates, long rejected,
+                        long resumedAt, long elapsedMillis) {
+        this.rowsRead = rowsRead;
+        this.added = added;
+        this.duplicates = duplicates;
+        this.rejected = rejected;
+        this.resumedAt = resumedAt;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /** @return data rows read by this run */
+    public long getRowsRead() { return rowsRead; }
+
+    /** @return books added to the catalog */
+    public long getAdded() { return added; }
+
+    /** @return rows whose ISBN was already in the catalog or earlier in the file */
+    public long getDuplicates() { return duplicates; }
+
+    /** @return rows that could not be turned into a book */
+    public long getRejected() { return rejected; }
+
+    /** @return rows skipped at the start because an interrupted run had committed them */
+    public long getResumedAt() { return resumedAt; }
+
+    /** @return duration of the import in milliseconds */
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    /** @return rows read per second */
+    public double getRowsPerSecond() {
+        return rowsRead * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    /**
+     * String representation used for the import summary.
+     *
+     * @return formatted text summary
+     */
+    @Override
+    public String toString() {
+        return String.format("ImportReport{ rows=%d, added=%d, duplicates=%d, rejected=%d, resumedAt=%d, rows/s=%.0f }",
+                rowsRead, added, duplicates, rejected, resumedAt, getRowsPerSecond());
+    }
+}
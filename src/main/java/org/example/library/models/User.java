@@ -33,6 +33,17 @@ public class User {
         this.email = email;
     }
 
+    /**
+     * Copy constructor, so that callers can be handed a user they may
+     * change without affecting anyone else's.
+     *
+     * @param other the user to copy
+     */
+
+    public User(User other) {
+        this(other.id, other.username, other.password, other.role, other.email);
+    }
+
     /**
      * Returns the user's email address.
      *
@@ -2,6 +2,8 @@ package org.example.library.services;
 
 import org.example.library.models.User;
 import org.example.library.storage.FileDatabase;
+import org.example.library.storage.RecordCodec;
+import org.example.library.storage.RecordIndex;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -26,29 +28,10 @@ public class AdminService {
 
     public User login(String username, String password) {
 
-        JSONObject db = FileDatabase.load();
-        JSONArray users = db.getJSONArray("users");
+        JSONObject u = RecordIndex.find(FileDatabase.load(), "users", username);
+        if (u == null || !u.getString("password").equals(password)) return null;
 
-        for (int i = 0; i < users.length(); i++) {
-            JSONObject u = users.getJSONObject(i);
-
-            if (u.getString("username").equals(username) &&
-                    u.getString("password").equals(password)) {
-
-                int id = u.has("id") ? u.getInt("id") : -1;
-
-                String email = u.has("email") ? u.getString("email") : "unknown@mail.com";
-
-                return new User(
-                        id,
-                        u.getString("username"),
-                        u.getString("password"),
-                        u.getString("role"),
-                        email   // ⭐ NEW
-                );
-            }
-        }
-        return null;
+        return RecordCodec.toUser(u);
     }
 
 
@@ -70,69 +53,75 @@ public class AdminService {
             return false;
         }
 
-        JSONObject db = FileDatabase.load();
-        JSONArray users = db.getJSONArray("users");
-        JSONArray books = db.getJSONArray("books");
+        // the checks and the removal form one transaction, so a loan
+        // recorded meanwhile cannot slip past them; it may be run again on
+        // a conflict, so it returns why it refused (null once the user is
+        // removed) and the message is printed after the commit
+        String refusal = FileDatabase.runInTransaction(db -> {
+            JSONArray users = db.getJSONArray("users");
+            JSONArray books = db.getJSONArray("books");
 
-        // Search for the user to remove
-        JSONObject targetUser = null;
-        Integer targetId = null;
-        int removeIndex = -1;
+            // Search for the user to remove
+            JSONObject targetUser = null;
+            Integer targetId = null;
+            int removeIndex = -1;
 
-        for (int i = 0; i < users.length(); i++) {
-            JSONObject u = users.getJSONObject(i);
+            for (int i = 0; i < users.length(); i++) {
+                JSONObject u = users.getJSONObject(i);
 
-            if (u.getString("username").equals(usernameToRemove)) {
-                targetUser = u;
-                removeIndex = i;
+                if (u.getString("username").equals(usernameToRemove)) {
+                    targetUser = u;
+                    removeIndex = i;
 
-                if (u.has("id")) {
-                    targetId = u.getInt("id"); // ⭐ only clients have IDs
+                    if (u.has("id")) {
+                        targetId = u.getInt("id"); // ⭐ only clients have IDs
+                    }
+                    break;
                 }
-                break;
             }
-        }
 
-        if (targetUser == null) {
-            System.out.println("❌ User not found.");
-            return false;
-        }
+            if (targetUser == null) {
+                return "❌ User not found.";
+            }
 
-        // Admin accounts cannot be deleted
-        if (targetUser.getString("role").equals("admin")) {
-            System.out.println("❌ You cannot unregister an admin account.");
-            return false;
-        }
+            // Admin accounts cannot be deleted
+            if (targetUser.getString("role").equals("admin")) {
+                return "❌ You cannot unregister an admin account.";
+            }
 
-        // Check for active loans or unpaid fines
-        if (targetId != null) {
-            for (int i = 0; i < books.length(); i++) {
-                JSONObject b = books.getJSONObject(i);
+            // Check for active loans or unpaid fines
+            if (targetId != null) {
+                for (int i = 0; i < books.length(); i++) {
+                    JSONObject b = books.getJSONObject(i);
 
-                int borrowedBy = b.optInt("borrowedBy", -1);
-                boolean borrowed = b.optBoolean("borrowed", false);
-                double fine = b.optDouble("fine", 0);
+                    int borrowedBy = b.optInt("borrowedBy", -1);
+                    boolean borrowed = b.optBoolean("borrowed", false);
+                    double fine = b.optDouble("fine", 0);
 
-                // If this client has borrowed books or fines
-                if (borrowedBy == targetId) {
+                    // If this client has borrowed books or fines
+                    if (borrowedBy == targetId) {
 
-                    if (borrowed) {
-                        System.out.println("❌ Cannot unregister user. They have active loans.");
-                        return false;
-                    }
+                        if (borrowed) {
+                            return "❌ Cannot unregister user. They have active loans.";
+                        }
 
-                    if (fine > 0) {
-                        System.out.println("❌ Cannot unregister user. They have unpaid fines.");
-                        return false;
+                        if (fine > 0) {
+                            return "❌ Cannot unregister user. They have unpaid fines.";
+                        }
                     }
                 }
             }
-        }
 
-        // Remove user
-        users.remove(removeIndex);
-        FileDatabase.save(db);
+            // Remove user
+            users.remove(removeIndex);
+            FileDatabase.deleteRecord(db, "users", targetUser);
+            return null;
+        });
 
+        if (refusal != null) {
+            System.out.println(refusal);
+            return false;
+        }
         System.out.println("✔ User '" + usernameToRemove + "' has been unregistered successfully.");
         return true;
     }
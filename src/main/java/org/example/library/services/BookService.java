@@ -2,13 +2,18 @@ package org.example.library.services;
 
 import org.example.library.models.Book;
 import org.example.library.storage.FileDatabase;
+import org.example.library.storage.OverdueRecords;
+import org.example.library.storage.PrefixIndex;
+import org.example.library.storage.RecordCodec;
+import org.example.library.storage.RecordIndex;
+import org.example.library.storage.TextIndex;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import org.example.library.models.User;
 import org.example.library.strategies.FineStrategy;
 import org.example.library.strategies.BookFineStrategy;
@@ -33,16 +38,7 @@ public class BookService {
      */
 
     public JSONObject findBookByISBN(String isbn) {
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-            if (b.getString("isbn").equals(isbn)) {
-                return b;
-            }
-        }
-        return null;
+        return RecordIndex.find(FileDatabase.load(), "books", isbn);
     }
 
     // ================= OBSERVER PATTERN ==================
@@ -89,21 +85,21 @@ public class BookService {
      * Adds a new book to the database.
      *
      * @param book the {@link Book} object to register
+     * @throws IllegalArgumentException if a book with the same ISBN exists
      */
 
     public void addBook(Book book) {
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-
-        JSONObject b = new JSONObject();
-        b.put("title", book.getTitle());
-        b.put("author", book.getAuthor());
-        b.put("isbn", book.getIsbn());
-        b.put("quantity", book.getQuantity());
-        b.put("available", book.isAvailable());
+        FileDatabase.runInTransaction(db -> {
+            // ISBNs identify books everywhere, journal replay included
+            if (RecordIndex.find(db, "books", book.getIsbn()) != null) {
+                throw new IllegalArgumentException("A book with ISBN " + book.getIsbn() + " already exists");
+            }
+            JSONObject b = RecordCodec.fromBook(book);
 
-        books.put(b);
-        FileDatabase.save(db);
+            db.getJSONArray("books").put(b);
+            FileDatabase.saveRecord(db, "books", b);
+            return b;
+        });
     }
 
     // ===== Search Functions =====
@@ -117,45 +113,50 @@ public class BookService {
 
     public List<Book> searchByISBN(String isbn) {
         List<Book> results = new ArrayList<>();
-        JSONObject b = findBookByISBN(isbn);
-        if (b != null) {
-            results.add(new Book(
-                    b.getString("title"),
-                    b.getString("author"),
-                    b.getString("isbn"),
-                    b.getInt("quantity"),
-                    b.getBoolean("available")
-            ));
+        JSONObject db = FileDatabase.load();
+
+        JSONObject record = RecordIndex.find(db, "books", isbn);
+        if (record != null) {
+            results.add(RecordCodec.toBook(record));
         }
         return results;
     }
 
 
     /**
-     * Searches for books that contain the specified title.
+     * Searches for books that contain the specified title, ignoring case.
+     *
+     * <p>Only books sharing every three-letter run of the query with their
+     * title are compared, found through an index of those runs, so typing
+     * "ama" still finds "Sama" and "Asmaa" without a catalog scan.</p>
      *
      * @param title the title substring to search for
      * @return list of matching books
      */
 
     public List<Book> searchByTitle(String title) {
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-        List<Book> results = new ArrayList<>();
+        return searchByTitle(title, false);
+    }
 
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-            if (b.getString("title").toLowerCase().contains(title.toLowerCase())) {
-                results.add(new Book(
-                        b.getString("title"),
-                        b.getString("author"),
-                        b.getString("isbn"),
-                        b.getInt("quantity"),
-                        b.getBoolean("available")
-                ));
-            }
-        }
-        return results;
+
+    /**
+     * Searches for books by title, either by whole words or by substring.
+     *
+     * <p>A word search returns the books whose title contains every word
+     * of {@code title}, in any order and case, and is answered from an
+     * index of the title words instead of a catalog scan. With
+     * {@code wholeWords} false this is {@link #searchByTitle(String)}.</p>
+     *
+     * @param title      words of the title, or a title substring
+     * @param wholeWords {@code true} to match whole words
+     * @return list of matching books
+     */
+
+    public List<Book> searchByTitle(String title, boolean wholeWords) {
+        JSONObject db = FileDatabase.load();
+        return booksAt(db, wholeWords
+                ? TextIndex.withWords(db, "books", "title", title)
+                : TextIndex.containing(db, "books", "title", title));
     }
 
 
@@ -167,21 +168,64 @@ public class BookService {
      */
 
     public List<Book> searchByAuthor(String author) {
+        return searchByAuthor(author, false);
+    }
+
+
+    /**
+     * Searches for books by author, either by whole words or by substring.
+     *
+     * @param author     words of the author's name, or a name substring
+     * @param wholeWords {@code true} to match whole words, as in
+     *                   {@link #searchByTitle(String, boolean)}
+     * @return list of matching books
+     */
+
+    public List<Book> searchByAuthor(String author, boolean wholeWords) {
         JSONObject db = FileDatabase.load();
+        return booksAt(db, wholeWords
+                ? TextIndex.withWords(db, "books", "author", author)
+                : TextIndex.containing(db, "books", "author", author));
+    }
+
+
+    /**
+     * Completes a partly typed title, for search-as-you-type.
+     *
+     * <p>Completions come from a sorted index of the distinct titles, so
+     * each keystroke costs a binary search rather than a catalog scan.</p>
+     *
+     * @param prefix start of the title, in any case
+     * @param limit  most completions to return
+     * @return up to {@code limit} distinct titles starting with the prefix, alphabetically
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     */
+
+    public List<String> completeTitle(String prefix, int limit) {
+        return PrefixIndex.complete(FileDatabase.load(), "books", "title", prefix, limit);
+    }
+
+
+    /**
+     * Completes a partly typed author name, for search-as-you-type.
+     *
+     * @param prefix start of the author's name, in any case
+     * @param limit  most completions to return
+     * @return up to {@code limit} distinct authors starting with the prefix, alphabetically
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     */
+
+    public List<String> completeAuthor(String prefix, int limit) {
+        return PrefixIndex.complete(FileDatabase.load(), "books", "author", prefix, limit);
+    }
+
+
+    private List<Book> booksAt(JSONObject db, List<Integer> positions) {
         JSONArray books = db.getJSONArray("books");
         List<Book> results = new ArrayList<>();
 
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-            if (b.getString("author").toLowerCase().contains(author.toLowerCase())) {
-                results.add(new Book(
-                        b.getString("title"),
-                        b.getString("author"),
-                        b.getString("isbn"),
-                        b.getInt("quantity"),
-                        b.getBoolean("available")
-                ));
-            }
+        for (int position : positions) {
+            results.add(RecordCodec.toBook(books.getJSONObject(position)));
         }
         return results;
     }
@@ -194,21 +238,12 @@ public class BookService {
      */
 
     public List<Book> getAllBooks() {
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-        List<Book> results = new ArrayList<>();
-
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-            results.add(new Book(
-                    b.getString("title"),
-                    b.getString("author"),
-                    b.getString("isbn"),
-                    b.getInt("quantity"),
-                    b.getBoolean("available")
-            ));
+        // the decoded books are shared, so every caller gets its own copies
+        List<Book> books = new ArrayList<>();
+        for (Book b : RecordCodec.books(FileDatabase.load())) {
+            books.add(new Book(b));
         }
-        return results;
+        return books;
     }
 
 
@@ -218,35 +253,36 @@ public class BookService {
      */
 
     public void checkOverdueBooks() {
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-
-        LocalDate today = LocalDate.now();
+        long today = LocalDate.now().toEpochDay();
 
         // Create strategy once (for books only)
         FineStrategy strategy = new BookFineStrategy();
 
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
+        // find the late ones in the committed version, which is read without
+        // copying anything; the transaction copies only the records it fines
+        Map<Integer, String> late = OverdueRecords.latePositions(FileDatabase.load(), "books", today);
+        if (!late.isEmpty()) {
+            FileDatabase.runInTransaction(db -> {
+                List<JSONObject> changed = new ArrayList<>();
 
-            if (b.optBoolean("borrowed", false)) {
-                String due = b.optString("dueDate", null);
-
-                if (due != null && !due.equals("null")) {
-                    LocalDate dueDate = LocalDate.parse(due);
-                    long daysLate = ChronoUnit.DAYS.between(dueDate, today);
+                for (Map.Entry<Integer, String> entry : late.entrySet()) {
+                    JSONObject b = OverdueRecords.lateRecord(db, "books", entry.getKey(), entry.getValue());
+                    if (b == null) continue;
 
+                    long daysLate = OverdueRecords.daysLate(b, today);
                     if (daysLate > 0) {
 
                         // ⭐ Use STRATEGY to calculate fine
                         double fine = strategy.calculateFine((int) daysLate);
                         b.put("fine", fine);
+                        changed.add(b);
                     }
                 }
-            }
-        }
 
-        FileDatabase.save(db);
+                FileDatabase.saveRecords(db, "books", changed);
+                return changed.size();
+            });
+        }
         System.out.println("✔ Book overdue detection complete (Strategy Pattern applied).");
     }
 
@@ -261,44 +297,41 @@ public class BookService {
 
     public void borrowBook(String isbn, User currentUser) {
 
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-
-            if (b.getString("isbn").equals(isbn)) {
+        // availability is checked and updated in one transaction,
+        // so two borrowers can never take the same last copy
+        String message = FileDatabase.runInTransaction(db -> {
+            JSONObject b = RecordIndex.find(db, "books", isbn);
+            if (b == null) {
+                return "❌ Book not found.";
+            }
 
-                if (!b.getBoolean("available")) {
-                    System.out.println("❌ Book not available.");
-                    return;
-                }
+            if (!b.getBoolean("available")) {
+                return "❌ Book not available.";
+            }
 
-                if (b.getBoolean("borrowed")) {
-                    System.out.println("❌ Book already borrowed.");
-                    return;
-                }
+            if (b.getBoolean("borrowed")) {
+                return "❌ Book already borrowed.";
+            }
 
-                // reduce quantity
-                int qty = b.getInt("quantity");
-                b.put("quantity", qty - 1);
+            // reduce quantity
+            int qty = b.getInt("quantity");
+            b.put("quantity", qty - 1);
 
-                if (qty - 1 == 0)
-                    b.put("available", false);
+            if (qty - 1 == 0)
+                b.put("available", false);
 
-                b.put("borrowed", true);
-                b.put("borrowedBy", currentUser.getId());
-                b.put("dueDate", LocalDate.now().plusDays(14).toString()); // 14 days
-                b.put("fine", 0);
+            b.put("borrowed", true);
+            b.put("borrowedBy", currentUser.getId());
+            LocalDate due = LocalDate.now().plusDays(14); // 14 days
+            b.put("dueDate", due.toEpochDay());
+            b.put("fine", 0);
 
-                FileDatabase.save(db);
+            FileDatabase.saveRecord(db, "books", b);
 
-                System.out.println("📘 Book borrowed! Due date: " + b.getString("dueDate"));
-                return;
-            }
-        }
+            return "📘 Book borrowed! Due date: " + due;
+        });
 
-        System.out.println("❌ Book not found.");
+        System.out.println(message);
     }
 
 
@@ -311,35 +344,32 @@ public class BookService {
 
     public void payFine(String isbn, double amount) {
 
-        JSONObject db = FileDatabase.load();
-        JSONArray books = db.getJSONArray("books");
-
-        for (int i = 0; i < books.length(); i++) {
-            JSONObject b = books.getJSONObject(i);
-
-            if (b.getString("isbn").equals(isbn)) {
-
-                double fine = b.optDouble("fine", 0);
+        String message = FileDatabase.runInTransaction(db -> {
+            JSONObject b = RecordIndex.find(db, "books", isbn);
+            if (b == null) {
+                return "❌ Book not found.";
+            }
 
-                if (fine == 0) {
-                    System.out.println("✔ No fines for this book.");
-                    return;
-                }
+            double fine = b.optDouble("fine", 0);
 
-                if (amount >= fine) {
-                    b.put("fine", 0);
-                    System.out.println("✔ Fine cleared!");
-                } else {
-                    b.put("fine", fine - amount);
-                    System.out.println("Remaining fine: " + (fine - amount));
-                }
+            if (fine == 0) {
+                return "✔ No fines for this book.";
+            }
 
-                FileDatabase.save(db);
-                return;
+            String result;
+            if (amount >= fine) {
+                b.put("fine", 0);
+                result = "✔ Fine cleared!";
+            } else {
+                b.put("fine", fine - amount);
+                result = "Remaining fine: " + (fine - amount);
             }
-        }
 
-        System.out.println("❌ Book not found.");
+            FileDatabase.saveRecord(db, "books", b);
+            return result;
+        });
+
+        System.out.println(message);
     }
 
 
@@ -383,27 +413,18 @@ public class BookService {
         JSONArray books = db.getJSONArray("books");
 
         List<JSONObject> overdue = new ArrayList<>();
-        LocalDate today = LocalDate.now();
+        long today = LocalDate.now().toEpochDay();
 
         for (int i = 0; i < books.length(); i++) {
             JSONObject b = books.getJSONObject(i);
 
             if (b.optInt("borrowedBy", -1) == userId &&
-                    b.optBoolean("borrowed", false) &&
-                    b.has("dueDate")) {
-
-
-                String raw = b.getString("dueDate");
-
-                // إصلاح صيغة التاريخ تلقائيًا
-                if (raw.matches("\\d{4}-\\d-\\d{2}")) raw = raw.replaceFirst("-(\\d)-", "-0$1-");
-                if (raw.matches("\\d{4}-\\d{2}-\\d")) raw = raw.replaceFirst("-(\\d)$", "-0$1");
-                if (raw.matches("\\d{4}-\\d-\\d"))    raw = raw.replaceFirst("-(\\d)-", "-0$1-").replaceFirst("-(\\d)$", "-0$1");
-
-                LocalDate due = LocalDate.parse(raw);
+                    b.optBoolean("borrowed", false)) {
 
+                // due dates are stored as epoch days
+                long due = RecordCodec.dueDay(b, Book.NO_DUE_DATE);
 
-                if (due.isBefore(today)) {
+                if (due != Book.NO_DUE_DATE && due < today) {
                     overdue.add(b);
                 }
             }
@@ -2,22 +2,26 @@ package org.example.library.services;
 
 import org.example.library.models.CD;
 import org.example.library.storage.FileDatabase;
+import org.example.library.storage.OverdueRecords;
+import org.example.library.storage.PrefixIndex;
+import org.example.library.storage.RecordCodec;
+import org.example.library.storage.RecordIndex;
 import org.example.library.strategies.FineStrategy;
 import org.example.library.strategies.CDFineStrategy;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service class responsible for managing CD operations in the library system.
  * This includes:
  * <ul>
  *     <li>Adding new CDs to the database</li>
- *     <li>Retrieving CDs</li>
+ *     <li>Retrieving CDs and completing titles and artists</li>
  *     <li>Borrowing CDs (7-day loan)</li>
  *     <li>Detecting overdue CDs and applying fines (Strategy Pattern)</li>
  *     <li>Calculating total CD fines for a specific user</li>
@@ -31,37 +35,6 @@ import java.util.List;
 public class CDService {
 
 
-    /**
-     * Converts a JSONObject representing a CD into a CD model object.
-     *
-     * @param c JSONObject containing CD fields from the database
-     * @return CD object with correctly mapped fields
-     */
-
-    private CD jsonToCD(JSONObject c) {
-        CD cd = new CD(
-                c.getString("id"),
-                c.getString("title"),
-                c.getString("artist"),
-                c.getInt("quantity"),
-                c.getBoolean("available")
-        );
-
-        if (c.has("borrowed"))
-            cd.setBorrowed(c.getBoolean("borrowed"));
-
-        if (c.has("dueDate") && !c.isNull("dueDate"))
-            cd.setDueDate(LocalDate.parse(c.getString("dueDate")));
-
-        if (c.has("fine"))
-            cd.setFine(c.getDouble("fine"));
-
-        if (c.has("borrowedBy"))
-            cd.setBorrowedBy(c.optInt("borrowedBy", -1));
-
-        return cd;
-    }
-
     /**
      * Adds a new CD to the JSON database.
      *
@@ -73,25 +46,20 @@ public class CDService {
      * </ul>
      *
      * @param cd CD object to be stored
+     * @throws IllegalArgumentException if a CD with the same ID exists
      */
 
     public void addCD(CD cd) {
-        JSONObject db = FileDatabase.load();
-        JSONArray cds = db.getJSONArray("cds");
+        FileDatabase.runInTransaction(db -> {
+            if (RecordIndex.find(db, "cds", cd.getId()) != null) {
+                throw new IllegalArgumentException("A CD with ID " + cd.getId() + " already exists");
+            }
+            JSONObject c = RecordCodec.fromCD(cd);
 
-        JSONObject c = new JSONObject();
-        c.put("id", cd.getId());
-        c.put("title", cd.getTitle());
-        c.put("artist", cd.getArtist());
-        c.put("quantity", cd.getQuantity());
-        c.put("available", cd.isAvailable());
-        c.put("borrowed", false);
-        c.put("dueDate", JSONObject.NULL);
-        c.put("fine", 0);
-        c.put("borrowedBy", JSONObject.NULL);
-
-        cds.put(c);
-        FileDatabase.save(db);
+            db.getJSONArray("cds").put(c);
+            FileDatabase.saveRecord(db, "cds", c);
+            return c;
+        });
     }
 
     /**
@@ -101,16 +69,38 @@ public class CDService {
      */
 
     public List<CD> getAllCDs() {
-        JSONObject db = FileDatabase.load();
-        JSONArray cds = db.getJSONArray("cds");
+        // the decoded CDs are shared, so every caller gets its own copies
+        List<CD> cds = new ArrayList<>();
+        for (CD c : RecordCodec.cds(FileDatabase.load())) {
+            cds.add(new CD(c));
+        }
+        return cds;
+    }
 
-        List<CD> results = new ArrayList<>();
+    /**
+     * Completes a partly typed CD title, for search-as-you-type.
+     *
+     * @param prefix start of the title, in any case
+     * @param limit  most completions to return
+     * @return up to {@code limit} distinct titles starting with the prefix, alphabetically
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     */
 
-        for (int i = 0; i < cds.length(); i++) {
-            results.add(jsonToCD(cds.getJSONObject(i)));
-        }
+    public List<String> completeTitle(String prefix, int limit) {
+        return PrefixIndex.complete(FileDatabase.load(), "cds", "title", prefix, limit);
+    }
 
-        return results;
+    /**
+     * Completes a partly typed artist name, for search-as-you-type.
+     *
+     * @param prefix start of the artist's name, in any case
+     * @param limit  most completions to return
+     * @return up to {@code limit} distinct artists starting with the prefix, alphabetically
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     */
+
+    public List<String> completeArtist(String prefix, int limit) {
+        return PrefixIndex.complete(FileDatabase.load(), "cds", "artist", prefix, limit);
     }
 
     /**
@@ -136,42 +126,37 @@ public class CDService {
      */
 
     public void borrowCD(String id, org.example.library.models.User currentUser) {
-        JSONObject db = FileDatabase.load();
-        JSONArray cds = db.getJSONArray("cds");
-
-        for (int i = 0; i < cds.length(); i++) {
-            JSONObject c = cds.getJSONObject(i);
+        String message = FileDatabase.runInTransaction(db -> {
+            JSONObject c = RecordIndex.find(db, "cds", id);
+            if (c == null) {
+                return "❌ CD not found.";
+            }
 
-            if (c.getString("id").equals(id)) {
+            if (!c.getBoolean("available")) {
+                return "❌ CD is not available.";
+            }
 
-                if (!c.getBoolean("available")) {
-                    System.out.println("❌ CD is not available.");
-                    return;
-                }
+            if (c.getBoolean("borrowed")) {
+                return "❌ CD already borrowed.";
+            }
 
-                if (c.getBoolean("borrowed")) {
-                    System.out.println("❌ CD already borrowed.");
-                    return;
-                }
+            // Update quantity
+            int qty = c.getInt("quantity");
+            c.put("quantity", qty - 1);
+            if (qty - 1 == 0) c.put("available", false);
 
-                // Update quantity
-                int qty = c.getInt("quantity");
-                c.put("quantity", qty - 1);
-                if (qty - 1 == 0) c.put("available", false);
+            // Borrow Info
+            c.put("borrowed", true);
+            c.put("borrowedBy", currentUser.getId());
+            LocalDate due = LocalDate.now().plusDays(7);
+            c.put("dueDate", due.toEpochDay());
+            c.put("fine", 0);
 
-                // Borrow Info
-                c.put("borrowed", true);
-                c.put("borrowedBy", currentUser.getId());
-                c.put("dueDate", LocalDate.now().plusDays(7).toString());
-                c.put("fine", 0);
+            FileDatabase.saveRecord(db, "cds", c);
+            return "🎵 CD Borrowed! Due date: " + due;
+        });
 
-                FileDatabase.save(db);
-                System.out.println("🎵 CD Borrowed! Due date: " + c.getString("dueDate"));
-                return;
-            }
-        }
-
-        System.out.println("❌ CD not found.");
+        System.out.println(message);
     }
 
     /**
@@ -192,36 +177,36 @@ public class CDService {
 
     public void checkOverdueCDs() {
 
-        JSONObject db = FileDatabase.load();
-        JSONArray cds = db.getJSONArray("cds");
-
-        LocalDate today = LocalDate.now();
+        long today = LocalDate.now().toEpochDay();
 
         // ⭐ Use CD Fine Strategy
         FineStrategy strategy = new CDFineStrategy();
 
-        for (int i = 0; i < cds.length(); i++) {
-            JSONObject c = cds.getJSONObject(i);
-
-            if (c.optBoolean("borrowed", false)) {
-
-                String due = c.optString("dueDate", null);
+        // find the late ones in the committed version, which is read without
+        // copying anything; the transaction copies only the records it fines
+        Map<Integer, String> late = OverdueRecords.latePositions(FileDatabase.load(), "cds", today);
+        if (!late.isEmpty()) {
+            FileDatabase.runInTransaction(db -> {
+                List<JSONObject> changed = new ArrayList<>();
 
-                if (due != null && !due.equals("null")) {
-                    LocalDate dueDate = LocalDate.parse(due);
-                    long daysLate = ChronoUnit.DAYS.between(dueDate, today);
+                for (Map.Entry<Integer, String> entry : late.entrySet()) {
+                    JSONObject c = OverdueRecords.lateRecord(db, "cds", entry.getKey(), entry.getValue());
+                    if (c == null) continue;
 
+                    long daysLate = OverdueRecords.daysLate(c, today);
                     if (daysLate > 0) {
 
                         // ⭐ Calculate fine using STRATEGY
                         double fine = strategy.calculateFine((int) daysLate);
                         c.put("fine", fine);
+                        changed.add(c);
                     }
                 }
-            }
-        }
 
-        FileDatabase.save(db);
+                FileDatabase.saveRecords(db, "cds", changed);
+                return changed.size();
+            });
+        }
         System.out.println("✔ CD overdue detection complete (Strategy Pattern applied).");
     }
 
@@ -0,0 +1,230 @@
+package org.example.library.services;
+
+import org.example.library.models.Book;
+import org.example.library.models.CD;
+import org.example.library.storage.FileDatabase;
+import org.example.library.storage.RecordCodec;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service class that writes the library's data out for reports and backups.
+ *
+ * <p>Four tables can be exported, each to CSV (with a header line) or to
+ * JSONL (one JSON object per line), chosen by file extension:</p>
+ * <ul>
+ *     <li>{@code books}: isbn, title, author, quantity, available, borrowed,
+ *     borrowedBy, dueDate, fine</li>
+ *     <li>{@code cds}: id, title, artist, quantity, available, borrowed,
+ *     borrowedBy, dueDate, fine</li>
+ *     <li>{@code users}: id, username, role, email (never passwords)</li>
+ *     <li>{@code fines}: type, id, title, borrowedBy, fine, for every book
+ *     and CD with an outstanding fine</li>
+ * </ul>
+ *
+ * <p>Rows are written straight from the stored records of one
+ * {@linkplain FileDatabase#loadSnapshot() snapshot} of the database, one at
+ * a time, so an export uses the same memory however large the catalog is
+ * and holds no lock while it runs: borrowers keep working, and their
+ * changes simply are not part of the export. {@link #exportAll(String, String)}
+ * writes every table from the same snapshot.</p>
+ */
+public class ExportService {
+
+    /** Tables that can be exported, with their columns. */
+    private static final Map<String, List<String>> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("books", List.of("isbn", "title", "author", "quantity", "available",
+                "borrowed", "borrowedBy", "dueDate", "fine"));
+        TABLES.put("cds", List.of("id", "title", "artist", "quantity", "available",
+                "borrowed", "borrowedBy", "dueDate", "fine"));
+        TABLES.put("users", List.of("id", "username", "role", "email"));
+        TABLES.put("fines", List.of("type", "id", "title", "borrowedBy", "fine"));
+    }
+
+    /**
+     * Exports one table.
+     *
+     * @param table "books", "cds", "users" or "fines"
+     * @param file  file to create or replace; {@code .csv} or {@code .jsonl}
+     * @return number of rows written
+     * @throws IllegalArgumentException if the table or format is unknown
+     * @throws RuntimeException if the file cannot be written
+     */
+    public long export(String table, String file) {
+        return export(FileDatabase.loadSnapshot(), table, file);
+    }
+
+    /**
+     * Exports every table from one snapshot, to {@code <table>.<format>}
+     * files in {@code directory}.
+     *
+     * @param directory existing directory for the files
+     * @param format    "csv" or "jsonl"
+     * @return rows written per table
+     * @throws IllegalArgumentException if the format is unknown
+     * @throws RuntimeException if a file cannot be written
+     */
+    public Map<String, Long> exportAll(String directory, String format) {
+        JSONObject db = FileDatabase.loadSnapshot();
+        Map<String, Long> rows = new LinkedHashMap<>();
+
+        for (String table : TABLES.keySet()) {
+            rows.put(table, export(db, table, Paths.get(directory, table + "." + format).toString()));
+        }
+        return rows;
+    }
+
+    private long export(JSONObject db, String table, String file) {
+        List<String> columns = TABLES.get(table);
+        if (columns == null) throw new IllegalArgumentException("Unknown table: " + table);
+
+        boolean csv = file.toLowerCase().endsWith(".csv");
+        if (!csv && !file.toLowerCase().endsWith(".jsonl")) {
+            throw new IllegalArgumentException("Unsupported export format (expected .csv or .jsonl): " + file);
+        }
+
+        Path path = Paths.get(file);
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            RowWriter rows = new RowWriter(out, columns, csv);
+
+            switch (table) {
+                case "books" -> {
+                    for (JSONObject b : records(db, "books")) {
+                        rows.write(b.opt("isbn"), b.opt("title"), b.opt("author"), b.opt("quantity"),
+                                b.opt("available"), b.optBoolean("borrowed", false), borrowedBy(b),
+                                dueDate(RecordCodec.dueDay(b, Book.NO_DUE_DATE), Book.NO_DUE_DATE),
+                                b.optDouble("fine", 0));
+                    }
+                }
+                case "cds" -> {
+                    for (JSONObject c : records(db, "cds")) {
+                        rows.write(c.opt("id"), c.opt("title"), c.opt("artist"), c.opt("quantity"),
+                                c.opt("available"), c.optBoolean("borrowed", false), borrowedBy(c),
+                                dueDate(RecordCodec.dueDay(c, CD.NO_DUE_DATE), CD.NO_DUE_DATE),
+                                c.optDouble("fine", 0));
+                    }
+                }
+                case "users" -> {
+                    for (JSONObject u : records(db, "users")) {
+                        rows.write(u.opt("id"), u.opt("username"), u.opt("role"), u.opt("email"));
+                    }
+                }
+                default -> {
+                    for (JSONObject b : records(db, "books")) {
+                        if (b.optDouble("fine", 0) > 0) {
+                            rows.write("book", b.opt("isbn"), b.opt("title"), borrowedBy(b), b.optDouble("fine", 0));
+                        }
+                    }
+                    for (JSONObject c : records(db, "cds")) {
+                        if (c.optDouble("fine", 0) > 0) {
+                            rows.write("cd", c.opt("id"), c.opt("title"), borrowedBy(c), c.optDouble("fine", 0));
+                        }
+                    }
+                }
+            }
+            return rows.count();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing export file", e);
+        }
+    }
+
+    /** Walks a collection's records without copying it. */
+    private static Iterable<JSONObject> records(JSONObject db, String collection) {
+        JSONArray records = db.optJSONArray(collection);
+        if (records == null) return List.of();
+
+        return () -> new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < records.length();
+            }
+
+            @Override
+            public JSONObject next() {
+                return records.getJSONObject(next++);
+            }
+        };
+    }
+
+    private static Object borrowedBy(JSONObject record) {
+        int id = record.optInt("borrowedBy", -1);
+        return id < 0 ? null : id;
+    }
+
+    private static Object dueDate(long dueDay, long none) {
+        return dueDay == none ? null : LocalDate.ofEpochDay(dueDay).toString();
+    }
+
+    /** Formats rows as CSV lines or JSONL objects. */
+    private static final class RowWriter {
+        private final Writer out;
+        private final List<String> columns;
+        private final boolean csv;
+        private long count;
+
+        RowWriter(Writer out, List<String> columns, boolean csv) throws IOException {
+            this.out = out;
+            this.columns = columns;
+            this.csv = csv;
+            if (csv) {
+                out.write(String.join(",", columns));
+                out.write('\n');
+            }
+        }
+
+        void write(Object... values) throws IOException {
+            if (csv) {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) out.write(',');
+                    if (values[i] != null && values[i] != JSONObject.NULL) {
+                        out.write(escapeCsv(String.valueOf(values[i])));
+                    }
+                }
+            } else {
+                JSONObject row = new JSONObject();
+                for (int i = 0; i < values.length; i++) {
+                    row.put(columns.get(i), values[i] == null ? JSONObject.NULL : values[i]);
+                }
+                row.write(out);
+            }
+            out.write('\n');
+            count++;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break.
+     *
+     * @param field the raw value
+     * @return the value as it appears in the CSV line
+     */
+    static String escapeCsv(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + field.replace("\"", "\"\"") + '"';
+            }
+        }
+        return field;
+    }
+}
@@ -0,0 +1,307 @@
+package org.example.library.services;
+
+import org.example.library.models.Book;
+import org.example.library.models.ImportReport;
+import org.example.library.storage.AtomicFile;
+import org.example.library.storage.FileDatabase;
+import org.example.library.storage.RecordCodec;
+import org.example.library.storage.RecordIndex;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service class that loads a whole catalog file into the library at once.
+ *
+ * <p>Adding books one by one through {@link BookService#addBook(Book)}
+ * commits once per book. An import instead streams the file line by line
+ * and commits the new books in large batches, one transaction per batch,
+ * so seeding a big catalog neither holds the file in memory nor rewrites
+ * the database per book.</p>
+ *
+ * <p>Two formats are read, chosen by file extension:</p>
+ * <ul>
+ *     <li>{@code .csv}: a header line naming the columns {@code isbn},
+ *     {@code title}, {@code author} and {@code quantity} (in any order),
+ *     then one book per row; fields may be quoted, and a quoted field may
+ *     span several lines, as {@link ExportService} writes them</li>
+ *     <li>{@code .jsonl}: one JSON object per line with the same keys</li>
+ * </ul>
+ *
+ * <p>A row repeating an ISBN seen earlier in the file is skipped, and each
+ * batch is checked against the catalog inside the transaction that adds
+ * it, so a book added meanwhile, from the menu or by another process, is
+ * not added twice; duplicates and malformed rows are counted and skipped.
+ * After every committed batch the number of rows done is written to
+ * {@code <file>.progress}. If an import is interrupted,
+ * running it again on the same file skips those rows and carries on; the
+ * progress file is removed once the import completes.</p>
+ */
+public class ImportService {
+
+    /** Rows committed per transaction by default. */
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Sets how many new books are committed together.
+     *
+     * @param rows books per transaction
+     * @throws IllegalArgumentException if {@code rows} is not positive
+     */
+    public void setBatchSize(int rows) {
+        if (rows <= 0) throw new IllegalArgumentException("Batch size must be positive: " + rows);
+        this.batchSize = rows;
+    }
+
+    /**
+     * Imports the books of a CSV or JSONL file, resuming an earlier
+     * interrupted import of the same file.
+     *
+     * @param file catalog file
+     * @return counts and throughput of this run
+     * @throws IllegalArgumentException if the format is not recognized
+     * @throws RuntimeException if the file cannot be read or a batch cannot be saved;
+     *                          batches committed before stay committed
+     */
+    public ImportReport importBooks(String file) {
+        Path path = Paths.get(file);
+        boolean csv = file.toLowerCase().endsWith(".csv");
+        if (!csv && !file.toLowerCase().endsWith(".jsonl")) {
+            throw new IllegalArgumentException("Unsupported catalog format (expected .csv or .jsonl): " + file);
+        }
+
+        long started = System.currentTimeMillis();
+        Path progress = progressFile(path);
+        long resumedAt = readProgress(progress);
+        Set<String> isbns = new HashSet<>();
+
+        long row = 0;
+        long rowsRead = 0;
+        long added = 0;
+        long duplicates = 0;
+        long rejected = 0;
+        List<JSONObject> batch = new ArrayList<>(Math.min(batchSize, 100_000));
+
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, Integer> columns = csv ? header(nextCsvRow(in)) : null;
+
+            String line;
+            while ((line = csv ? nextCsvRow(in) : in.readLine()) != null) {
+                if (row++ < resumedAt) continue;
+                rowsRead++;
+                if (line.isBlank()) continue;
+
+                JSONObject record = csv ? fromCsv(line, columns) : fromJson(line);
+                if (record == null) {
+                    rejected++;
+                } else if (!isbns.add(record.getString("isbn"))) {
+                    duplicates++;
+                } else {
+                    batch.add(record);
+                }
+
+                if (batch.size() >= batchSize) {
+                    int committed = commit(batch);
+                    added += committed;
+                    duplicates += batch.size() - committed;
+                    batch.clear();
+                    writeProgress(progress, row);
+                }
+            }
+
+            int committed = commit(batch);
+            added += committed;
+            duplicates += batch.size() - committed;
+            Files.deleteIfExists(progress);
+        } catch (IOException e) {
+            throw new RuntimeException("Error importing catalog file", e);
+        }
+
+        return new ImportReport(rowsRead, added, duplicates, rejected, resumedAt,
+                System.currentTimeMillis() - started);
+    }
+
+    // ===== Batches =====
+
+    /**
+     * Adds the books of a batch that are not in the catalog yet.
+     *
+     * @return how many were added; the others are duplicates
+     */
+    private int commit(List<JSONObject> batch) {
+        if (batch.isEmpty()) return 0;
+
+        return FileDatabase.runInTransaction(db -> {
+            JSONArray books = db.getJSONArray("books");
+            List<JSONObject> added = new ArrayList<>(batch.size());
+            for (JSONObject b : batch) {
+                // the catalog as it is now, with every commit since the import began
+                if (RecordIndex.find(db, "books", b.getString("isbn")) != null) continue;
+
+                books.put(b);
+                added.add(b);
+            }
+            FileDatabase.saveRecords(db, "books", added);
+            return added.size();
+        });
+    }
+
+    // ===== Rows =====
+
+    /** Builds the record of a JSONL row, or returns null if it is not a valid book. */
+    private JSONObject fromJson(String line) {
+        try {
+            JSONObject row = new JSONObject(line);
+            return record(row.optString("isbn", null), row.optString("title", null),
+                    row.optString("author", null), row.opt("quantity"));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /** Builds the record of a CSV row, or returns null if it is not a valid book. */
+    private JSONObject fromCsv(String line, Map<String, Integer> columns) {
+        List<String> fields = splitCsv(line);
+        if (fields == null) return null;
+
+        return record(field(fields, columns, "isbn"), field(fields, columns, "title"),
+                field(fields, columns, "author"), field(fields, columns, "quantity"));
+    }
+
+    private JSONObject record(String isbn, String title, String author, Object quantity) {
+        if (isbn == null || isbn.isBlank() || title == null || author == null) return null;
+
+        int qty;
+        try {
+            qty = quantity instanceof Number n ? n.intValue() : Integer.parseInt(String.valueOf(quantity).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (qty < 0) return null;
+
+        return RecordCodec.fromBook(new Book(title.trim(), author.trim(), isbn.trim(), qty, qty > 0));
+    }
+
+    private static Map<String, Integer> header(String line) throws IOException {
+        List<String> names = line == null ? null : splitCsv(line);
+        if (names == null) throw new IOException("CSV file has no header line");
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(), i);
+        }
+        for (String required : List.of("isbn", "title", "author", "quantity")) {
+            if (!columns.containsKey(required)) {
+                throw new IOException("CSV header has no \"" + required + "\" column");
+            }
+        }
+        return columns;
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        int index = columns.get(name);
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    /**
+     * Reads the next CSV row. A row whose quoted field is still open at the
+     * end of a line goes on with the next line, the line break being part
+     * of the field.
+     *
+     * @param in the CSV file
+     * @return the row, or {@code null} at the end of the file
+     */
+    static String nextCsvRow(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) return null;
+
+        StringBuilder row = new StringBuilder(line);
+        // a field is open while an odd number of quotes has been read
+        boolean open = quotes(line) % 2 != 0;
+        while (open && (line = in.readLine()) != null) {
+            row.append('\n').append(line);
+            open = (quotes(line) % 2 != 0) != open;
+        }
+        return row.toString();
+    }
+
+    private static int quotes(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') count++;
+        }
+        return count;
+    }
+
+    /**
+     * Splits one CSV row. Quoted fields may contain commas and line breaks,
+     * and a doubled quote inside them stands for one quote.
+     *
+     * @return the fields, or {@code null} if a quote is left open
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) return null;
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // ===== Progress =====
+
+    private static Path progressFile(Path file) {
+        return Paths.get(file + ".progress");
+    }
+
+    private static long readProgress(Path progress) {
+        try {
+            return Files.exists(progress) ? Long.parseLong(Files.readString(progress).trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            // unreadable progress only costs re-reading rows, which are then duplicates
+            return 0;
+        }
+    }
+
+    private static void writeProgress(Path progress, long rows) throws IOException {
+        // replaced whole, so a crash never leaves a torn count behind
+        AtomicFile.write(progress, Long.toString(rows));
+    }
+}
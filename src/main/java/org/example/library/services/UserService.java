@@ -2,8 +2,7 @@ package org.example.library.services;
 
 import org.example.library.models.User;
 import org.example.library.storage.FileDatabase;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.example.library.storage.RecordCodec;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,8 +10,8 @@ import java.util.List;
 /**
  * Service responsible for retrieving all users stored in the JSON database.
  * <p>
- * This service reads from {@link FileDatabase}, extracts user fields,
- * and converts each JSON object into a {@link User} instance.
+ * This service reads from {@link FileDatabase} and converts each stored
+ * user into a {@link User} instance through {@link RecordCodec}.
  * </p>
  *
  * Features:
@@ -34,23 +33,11 @@ public class UserService {
 
     public List<User> getAllUsers() {
 
-        JSONObject db = FileDatabase.load();
-        JSONArray arr = db.getJSONArray("users");
-
+        // the decoded users are shared, so every caller gets its own copies
         List<User> users = new ArrayList<>();
-
-        for (int i = 0; i < arr.length(); i++) {
-            JSONObject u = arr.getJSONObject(i);
-
-            users.add(new User(
-                    u.getInt("id"),
-                    u.getString("username"),
-                    u.getString("password"),
-                    u.getString("role"),
-                    u.getString("email")   // ⭐ NEW
-            ));
+        for (User u : RecordCodec.users(FileDatabase.load())) {
+            users.add(new User(u));
         }
-
         return users;
     }
 }
@@ -0,0 +1,95 @@
+package org.example.library.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crash-safe replacement of a file's contents.
+ *
+ * <p>The new contents are written to a temporary file in the same
+ * directory, forced to disk, and then renamed over the target. Readers
+ * (and a restart after a crash) therefore see either the old file or the
+ * new one, never a truncated mix of both.</p>
+ *
+ * <p>Used for the database's own files, and by services for small state
+ * files that must survive a crash whole, such as import progress.</p>
+ */
+public final class AtomicFile {
+
+    private static final AtomicLong counter = new AtomicLong();
+
+    private AtomicFile() {
+    }
+
+    /**
+     * Writes the new contents of a file.
+     */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Atomically replaces {@code target} with the given text.
+     *
+     * @param target  file to replace
+     * @param content new contents, written as UTF-8
+     * @throws IOException if the file cannot be written or renamed
+     */
+    public static void write(Path target, String content) throws IOException {
+        write(target, channel -> {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    /**
+     * Atomically replaces {@code target} with whatever {@code content}
+     * writes to the temporary file.
+     *
+     * @param target  file to replace
+     * @param content writes the new contents
+     * @throws IOException if the file cannot be written or renamed
+     */
+    static void write(Path target, Content content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        // unique per process and call, created with the usual permissions
+        Path tmp = dir.resolve(target.getFileName() + "." + ProcessHandle.current().pid()
+                + "." + counter.incrementAndGet() + ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                content.writeTo(channel);
+                channel.force(true);
+            }
+
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Makes a rename or a newly created file in {@code dir} durable. Not
+     * every platform allows opening a directory, so failures here are
+     * ignored.
+     */
+    static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // best effort only
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary segment format for large collections.
+ *
+ * <p>Layout (big-endian):</p>
+ * <pre>
+ *   header   magic "LIB1" | version int | record count int | reserved int | table offset long
+ *   records  each record as compact UTF-8 JSON, back to back
+ *   table    one fixed-width entry per record: offset long | length int
+ * </pre>
+ *
+ * <p>A segment is read by memory-mapping the file and checking the header.
+ * No record is parsed then: opening only sets up one empty slot per record,
+ * and records are parsed one at a time, the first time each one is
+ * accessed; see {@link MappedRecords}. Records that were never accessed are
+ * copied byte for byte when the collection is written again.</p>
+ *
+ * <p>A file is mapped as a single buffer, so a segment holds at most
+ * {@link Integer#MAX_VALUE} bytes, about 2 GB.</p>
+ *
+ * <p>library.json and the JSON export stay the interchange format; this
+ * format is only used for segment files when
+ * {@link FileDatabase#useBinarySegments(boolean)} is enabled.</p>
+ */
+final class BinarySegment {
+
+    static final int MAGIC = 0x4C494231; // "LIB1"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 24;
+    static final int ENTRY_SIZE = 12;
+
+    private BinarySegment() {
+    }
+
+    /**
+     * Maps a binary segment without parsing any record.
+     *
+     * @param path segment file
+     * @return the collection, decoding records on access
+     * @throws IOException if the file cannot be read or is not a binary segment
+     */
+    static MappedRecords read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary segment larger than 2 GB: " + path);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.BIG_ENDIAN);
+
+            if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary segment: " + path);
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException("Unsupported binary segment version " + mapped.getInt(4) + ": " + path);
+            }
+
+            int count = mapped.getInt(8);
+            long table = mapped.getLong(16);
+            if (count < 0 || table < HEADER_SIZE || table + (long) count * ENTRY_SIZE > mapped.capacity()) {
+                throw new IOException("Damaged binary segment: " + path);
+            }
+            return new MappedRecords(mapped, count, (int) table);
+        }
+    }
+
+    /**
+     * Writes a collection in the binary format.
+     *
+     * @param channel empty file to write to
+     * @param records records to store; {@link ByteBuffer} elements are
+     *                already-encoded records and are copied unchanged
+     * @param writer  encodes the other records
+     * @throws IOException if writing fails or the segment would be larger
+     *                     than 2 GB
+     */
+    static void write(FileChannel channel, List<Object> records, SnapshotWriter writer) throws IOException {
+        long[] offsets = new long[records.size()];
+        int[] lengths = new int[records.size()];
+
+        writer.begin(channel, HEADER_SIZE);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = writer.position();
+            writer.append(records.get(i));
+            lengths[i] = (int) (writer.position() - offsets[i]);
+        }
+
+        long table = writer.position();
+        if (table + (long) offsets.length * ENTRY_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("Collection too large for a binary segment: " + table + " bytes of records");
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            writer.appendLong(offsets[i]);
+            writer.appendInt(lengths[i]);
+        }
+        writer.finish();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(offsets.length).putInt(0).putLong(table).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Parses one encoded record.
+     *
+     * @param bytes the record's compact JSON; its position is left unchanged
+     * @return the record
+     */
+    static Object decode(ByteBuffer bytes) {
+        return new JSONTokener(StandardCharsets.UTF_8.decode(bytes.duplicate()).toString()).nextValue();
+    }
+
+    /**
+     * Collection backed by a mapped binary segment.
+     *
+     * <p>Every slot starts out undecoded; {@link #opt(int)} parses a record
+     * on its first access and keeps the result, so changes made to it are
+     * seen by later reads like with any other {@link JSONArray}. Methods that
+     * walk the whole array decode everything first. Another array's
+     * {@code similar(mapped)} reads the slots directly, so compare with
+     * {@code mapped.similar(other)} instead.</p>
+     */
+    static final class MappedRecords extends JSONArray {
+
+        private static final Object NOT_DECODED = new Object();
+
+        private final ByteBuffer mapped;
+        private final int table;
+
+        MappedRecords(ByteBuffer mapped, int count, int table) {
+            super(count);
+            this.mapped = mapped;
+            this.table = table;
+            for (int i = 0; i < count; i++) {
+                super.put(NOT_DECODED);
+            }
+        }
+
+        @Override
+        public Object opt(int index) {
+            Object value = super.opt(index);
+            if (value != NOT_DECODED) return value;
+
+            synchronized (this) {
+                value = super.opt(index);
+                if (value == NOT_DECODED) {
+                    value = decode(index);
+                    super.put(index, value);
+                }
+                return value;
+            }
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < length();
+                }
+
+                @Override
+                public Object next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return opt(next++);
+                }
+            };
+        }
+
+        @Override
+        public Object remove(int index) {
+            // later slots would no longer line up with the offset table
+            decodeAll();
+            return super.remove(index);
+        }
+
+        @Override
+        public boolean similar(Object other) {
+            decodeAll();
+            return super.similar(other);
+        }
+
+        @Override
+        public List<Object> toList() {
+            decodeAll();
+            return super.toList();
+        }
+
+        @Override
+        public Writer write(Writer writer, int indentFactor, int indent) throws JSONException {
+            decodeAll();
+            return super.write(writer, indentFactor, indent);
+        }
+
+        /**
+         * @param index record position
+         * @return {@code true} if the record has been parsed
+         */
+        boolean isDecoded(int index) {
+            return super.opt(index) != NOT_DECODED;
+        }
+
+        /**
+         * Returns a shallow copy for writing: parsed records as they are
+         * now, and the encoded bytes of records that were never parsed.
+         */
+        List<Object> snapshot() {
+            List<Object> records = new ArrayList<>(length());
+            for (int i = 0; i < length(); i++) {
+                Object value = super.opt(i);
+                records.add(value == NOT_DECODED ? bytes(i) : value);
+            }
+            return records;
+        }
+
+        void decodeAll() {
+            for (int i = 0; i < length(); i++) {
+                opt(i);
+            }
+        }
+
+        private Object decode(int index) {
+            return BinarySegment.decode(bytes(index));
+        }
+
+        private ByteBuffer bytes(int index) {
+            int entry = table + index * ENTRY_SIZE;
+            long offset = mapped.getLong(entry);
+            int length = mapped.getInt(entry + 8);
+            if (offset < HEADER_SIZE || length < 0 || offset + length > table) {
+                throw new JSONException("Damaged binary segment record at index " + index);
+            }
+            return mapped.slice((int) offset, length);
+        }
+    }
+}
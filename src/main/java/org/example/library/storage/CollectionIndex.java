@@ -0,0 +1,114 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Objects;
+
+/**
+ * Base of the lookup structures kept over one collection's records, such
+ * as {@link RecordIndex} and {@link TextIndex}.
+ *
+ * <p>An index brings itself up to date with the records it is asked
+ * about. Records appended since the last lookup are added to it, and it is
+ * rebuilt when the record it last indexed is no longer at the same
+ * position, which happens when records were removed or moved, or when the
+ * records belong to another version of the database. The only change it is
+ * told about is a record saved through {@link FileDatabase#saveRecords}
+ * while it stays in place: {@link #reindex} is called for it, so that
+ * indexes over fields that change in place, such as titles, can add the
+ * record under its new text.</p>
+ *
+ * <p>The index is shared by every version of the database, so it must
+ * stay valid for all of them: an index over fields that change in place
+ * keeps the old entries of a changed record and checks every candidate
+ * against the record it is looking at.</p>
+ *
+ * <p>Subclasses synchronize their lookups, and call {@link #update}
+ * first.</p>
+ */
+abstract class CollectionIndex {
+
+    private final String keyField;
+    private int indexed;
+    private String lastKey;
+
+    /**
+     * @param keyField field the collection's records are keyed by
+     */
+    CollectionIndex(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * @param collection "books", "cds" or "users"
+     * @return the field the collection's records are keyed by
+     * @throws IllegalArgumentException if the collection has no key field
+     */
+    static String keyField(String collection) {
+        String keyField = Journal.keyField(collection);
+        if (keyField == null) throw new IllegalArgumentException("Collection has no key field: " + collection);
+        return keyField;
+    }
+
+    /**
+     * Brings the index up to date with {@code records}.
+     */
+    final void update(JSONArray records) {
+        int length = records.length();
+        if (indexed > length || (indexed > 0 && !Objects.equals(lastKey, keyAt(records, indexed - 1)))) {
+            rebuild(records);
+        } else if (indexed < length) {
+            catchUp(records);
+        }
+    }
+
+    /**
+     * Indexes {@code records} from scratch.
+     */
+    final void rebuild(JSONArray records) {
+        clear();
+        indexed = 0;
+        catchUp(records);
+    }
+
+    private void catchUp(JSONArray records) {
+        int length = records.length();
+        add(records, indexed, length);
+        indexed = length;
+        lastKey = length == 0 ? null : keyAt(records, length - 1);
+    }
+
+    /**
+     * Indexes again a record that was changed in place. Keys are never
+     * changed in place, so by default there is nothing to do.
+     *
+     * @param records  the collection holding the record
+     * @param position position of the record
+     */
+    void reindex(JSONArray records, int position) {
+    }
+
+    /**
+     * @return {@code true} if the record at {@code position} has been
+     *         indexed, rather than being left for the next lookup
+     */
+    final boolean isIndexed(int position) {
+        return position < indexed;
+    }
+
+    /** Empties the index. */
+    abstract void clear();
+
+    /**
+     * Indexes the records at positions {@code from} (inclusive) to
+     * {@code to} (exclusive), which follow every record indexed so far,
+     * or which are indexed already when called from {@link #reindex}.
+     */
+    abstract void add(JSONArray records, int from, int to);
+
+    final String keyAt(JSONArray records, int position) {
+        JSONObject record = records.optJSONObject(position);
+        return record == null ? null : record.optString(keyField, null);
+    }
+}
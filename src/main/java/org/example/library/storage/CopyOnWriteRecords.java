@@ -0,0 +1,202 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A transaction's private version of a collection.
+ *
+ * <p>It starts out as a shallow copy of the committed collection: the
+ * slots point at the same record objects, which the readers of that version
+ * may be using. The first time the transaction accesses a record, the
+ * record is copied into the slot, so the transaction can change it freely
+ * without the readers ever seeing it. Records the transaction only adds
+ * are its own to begin with.</p>
+ *
+ * <p>Once the transaction commits, the collection is {@linkplain #freeze()
+ * frozen}: it has become a committed version itself, later transactions
+ * copy from it in turn, and its records are returned as they are.</p>
+ *
+ * <p>Slots may also hold the encoded bytes of binary segment records that
+ * were never parsed; those are parsed on access and copied as bytes when
+ * the collection is written.</p>
+ */
+final class CopyOnWriteRecords extends JSONArray {
+
+    /** Records this version may modify; {@code null} once frozen. */
+    private Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param committed the collection of the committed version
+     */
+    CopyOnWriteRecords(JSONArray committed) {
+        super(committed.length());
+        for (Object value : slots(committed)) {
+            super.put(value);
+        }
+    }
+
+    /**
+     * Returns the values of a collection for copying or writing, without
+     * parsing records that were never accessed; see {@link BinarySegment}.
+     *
+     * @param array any collection
+     * @return its records, and the encoded bytes of unparsed records
+     */
+    static List<Object> slots(JSONArray array) {
+        if (array instanceof BinarySegment.MappedRecords mapped) {
+            return mapped.snapshot();
+        }
+        List<Object> values = new ArrayList<>(array.length());
+        if (array instanceof CopyOnWriteRecords copy) {
+            for (int i = 0; i < copy.length(); i++) {
+                values.add(copy.slot(i));
+            }
+        } else {
+            for (Object value : array) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Object opt(int index) {
+        Object value = super.opt(index);
+        if (!needsCopy(value)) return value;
+
+        synchronized (this) {
+            value = super.opt(index);
+            if (!needsCopy(value)) return value;
+
+            value = value instanceof ByteBuffer bytes ? BinarySegment.decode(bytes) : copy(value);
+            if (owned != null) owned.add(value);
+            super.put(index, value);
+            return value;
+        }
+    }
+
+    @Override
+    public JSONArray put(Object value) {
+        own(value);
+        return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(int index, Object value) {
+        own(value);
+        return super.put(index, value);
+    }
+
+    @Override
+    public Object remove(int index) {
+        Object value = opt(index);
+        super.remove(index);
+        return value;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < length();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return opt(next++);
+            }
+        };
+    }
+
+    @Override
+    public boolean similar(Object other) {
+        resolveAll();
+        return super.similar(other);
+    }
+
+    @Override
+    public List<Object> toList() {
+        resolveAll();
+        return super.toList();
+    }
+
+    @Override
+    public Writer write(Writer writer, int indentFactor, int indent) throws JSONException {
+        resolveAll();
+        return super.write(writer, indentFactor, indent);
+    }
+
+    /**
+     * Marks the collection as committed: records are no longer copied on
+     * access, since no transaction will modify this version any more.
+     */
+    synchronized void freeze() {
+        owned = null;
+    }
+
+    /**
+     * @return {@code true} once the collection belongs to a committed version
+     */
+    synchronized boolean isFrozen() {
+        return owned == null;
+    }
+
+    /** Raw slot: a record, or the encoded bytes of an unparsed one. */
+    private Object slot(int index) {
+        return super.opt(index);
+    }
+
+    private boolean needsCopy(Object value) {
+        if (value instanceof ByteBuffer) return true;
+        Set<Object> mine = owned;
+        return mine != null && (value instanceof JSONObject || value instanceof JSONArray)
+                && !mine.contains(value);
+    }
+
+    private void own(Object value) {
+        synchronized (this) {
+            if (owned != null && value != null) owned.add(value);
+        }
+    }
+
+    private void resolveAll() {
+        for (int i = 0; i < length(); i++) {
+            opt(i);
+        }
+    }
+
+    /** Deep copy of a record, so that nested values are private as well. */
+    static Object copy(Object value) {
+        if (value instanceof JSONObject object) {
+            JSONObject copy = new JSONObject();
+            for (String key : object.keySet()) {
+                copy.put(key, copy(object.opt(key)));
+            }
+            return copy;
+        }
+        if (value instanceof JSONArray array) {
+            JSONArray copy = new JSONArray();
+            for (Object element : array) {
+                copy.put(copy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+}
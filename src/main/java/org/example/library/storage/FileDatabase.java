@@ -3,8 +3,29 @@ package org.example.library.storage;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.Deflater;
 /**
  * Utility class responsible for loading, saving, and managing
  * the JSON file used as the library's database.
@@ -13,6 +34,71 @@ import java.nio.file.Paths;
  * Methods in this class allow switching between a main database and
  * a test database, ensuring safe testing without corrupting real data.</p>
  *
+ * <p>Each collection ("users", "books", "cds", "loans") is stored in its
+ * own segment file next to the database file, e.g. {@code library.books.json};
+ * {@code library.json} itself only keeps the remaining database-level
+ * fields. Segments are read and written independently, so changing a book
+ * rewrites the books segment only. A database file that still contains the
+ * collections inline (the original single-file layout) is split into
+ * segments the first time it is loaded.</p>
+ *
+ * <p>The database is kept in memory and reused by every call to
+ * {@link #load()}. Collections are loaded lazily: {@code load()} itself only
+ * reads library.json, and a segment is read the first time its collection
+ * is accessed, so logging in never parses the book catalog. Each file's
+ * modification time and size are remembered, and a collection whose
+ * segment changed on disk is simply read again on its next access.</p>
+ *
+ * <p>In journal mode ({@link #useJournal(boolean)}) single-record changes
+ * reported through {@link #saveRecord(JSONObject, String, JSONObject)} are
+ * appended to a small log next to the database file instead of rewriting
+ * the whole snapshot. The snapshot is only rewritten by {@link #checkpoint()},
+ * which also runs automatically once the log holds
+ * {@link #setCheckpointThreshold(int)} entries. With
+ * {@link #useBackgroundCheckpoints(boolean)} a daemon thread takes over
+ * that work, and also checkpoints once the log grows past a size or age
+ * limit, so no foreground call waits for a snapshot to be written.
+ * Journal entries are checksummed: a crash in the middle of an append
+ * loses that append only, and the damaged tail is cut off before the
+ * next one.</p>
+ *
+ * <p>Snapshots are written to a temporary file, forced to disk and renamed
+ * over the database file, so a crash never leaves a truncated database.
+ * Saves that arrive within the group-commit window
+ * ({@link #setGroupCommitWindow(long)}) share a single physical write.</p>
+ *
+ * <p>Snapshots are stored as compact JSON by default. Pretty-printed files
+ * are still read transparently; {@link #usePrettyFormat(boolean)} switches
+ * the on-disk format and {@link #exportPretty(String)} writes an indented
+ * copy for people to read.</p>
+ *
+ * <p>Read-modify-write changes go through {@link #runInTransaction(Function)}:
+ * transactions run one at a time, and everything they save is committed
+ * together when they return, as a new version of the database. Readers keep
+ * using the version they loaded, so they neither wait for transactions nor
+ * see their changes half-made.</p>
+ *
+ * <p>With {@link #useBinarySegments(boolean)} the segments are written as
+ * memory-mapped binary files instead, whose records are only parsed when
+ * they are accessed. library.json and the export stay JSON.
+ * {@link #useCompressedSegments(boolean)} instead keeps JSON segments but
+ * stores them GZIP-compressed.</p>
+ *
+ * <p>library.json also records the {@code "schemaVersion"} of the stored
+ * data. Data stored with an older schema is migrated the first time it
+ * is loaded, and saved again in the current format.</p>
+ *
+ * <p>library.json carries a {@code "version"} that grows with every commit.
+ * When several processes share the database, {@link #useProcessLock(boolean)}
+ * makes every writer hold an OS lock on {@code library.lock} while it
+ * commits, and rejects a change with a {@link WriteConflictException} if
+ * another process committed since the database was read.</p>
+ *
+ * <p>In write-behind mode ({@link #useWriteBehind(boolean)}) saves return as
+ * soon as the change is in memory. Their snapshot is written by a
+ * background thread within a bounded window, and at the latest when the
+ * JVM shuts down.</p>
+ *
  * @author Dima & Asmaa
  * @version 1.0
  */
@@ -22,11 +108,79 @@ public class FileDatabase {
 
 
     private static String PATH = System.getProperty("user.dir") + "/library.json";
+
+    /** Collections that live in their own segment file. */
+    private static final List<String> SEGMENTS = List.of("users", "books", "cds", "loans");
+
+    // ===== Resident copy of the database =====
+    private static LazyDatabase cached;
+    private static String cachedPath;
+    private static final Map<Path, FileStamp> stamps = new HashMap<>();
+
+    private static long cacheHits;
+    private static long cacheMisses;
+    private static long collectionLoads;
+
+    // ===== Journal mode =====
+    private static boolean journalEnabled = false;
+    private static int checkpointThreshold = 1000;
+    private static int journalEntries;
+    private static long journalBytes;
+    private static long journalStarted;
+    private static boolean journalDamaged;
+
+    // ===== Background checkpoints =====
+    private static final long CHECKPOINT_POLL_MILLIS = 1000;
+    private static ScheduledExecutorService checkpointer;
+    private static long checkpointBytes = 1024 * 1024;
+    private static long checkpointAgeMillis = 10 * 60 * 1000;
+    private static Instant lastCheckpoint;
+
+    // ===== Write-behind =====
+    private static final Object writeBehindLock = new Object();
+    private static boolean writeBehind = false;
+    private static long writeBehindMillis = 50;
+    private static int writeBehindSaves = 100;
+    private static ScheduledExecutorService writeBehindFlusher;
+    private static ScheduledFuture<?> scheduledFlush;
+    private static boolean shutdownHookAdded;
+    private static long unflushedTicket;
+    private static int unflushedSaves;
+    private static long unflushedSince;
+    private static long flushingSince;
+
+    // ===== Snapshot writes =====
+    private static final GroupCommit groupCommit = new GroupCommit(2);
+    private static final SnapshotWriter snapshotWriter = new SnapshotWriter();
+    private static LazyDatabase pending;
+    private static final Set<String> dirtySegments = new LinkedHashSet<>();
+    private static boolean rootDirty;
+    private static boolean writing;
+    private static boolean prettyFormat = false;
+    private static boolean binarySegments = false;
+    private static boolean compressedSegments = false;
+    private static int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    // ===== Transactions =====
+    private static final ReentrantLock writeLock = new ReentrantLock();
+    private static final ThreadLocal<Transaction> currentTransaction = new ThreadLocal<>();
+    private static final int CONFLICT_ATTEMPTS = 3;
+
+    // ===== Cross-process locking =====
+    private static final ProcessLock processLock = new ProcessLock();
+    private static boolean processLocking = false;
+    private static long version;
+
+    // ===== Schema =====
+    private static int schemaVersion = SchemaMigrations.CURRENT;
+    /** Thread migrating the data it has read, while readers wait for it. */
+    private static Thread upgrading;
     /**
      * Switches the database path to the main application database file (library.json).
      * This method is used when the system runs normally outside the testing environment.
      */
     public static void useMainDatabase() {
+        flushPending();
         PATH = System.getProperty("user.dir") + "/library.json";
     }
     /**
@@ -36,49 +190,628 @@ public class FileDatabase {
      * Should be used in all unit tests.
      */
     public static void useTestDatabase() {
+        flushPending();
         PATH = System.getProperty("user.dir") + "/test_library.json";
     }
     /**
      * Loads the JSON database from disk.
      *
      * <p>If the file does not exist, it automatically creates a new JSON
-     * structure containing empty arrays for "users", "books", and "loans".
+     * structure containing empty arrays for "users", "books", "cds" and "loans".
      * </p>
      *
+     * <p>The returned object is the latest committed version of the
+     * database. Transactions never modify a version that has been handed
+     * out: they work on a copy-on-write version of their own and publish it
+     * as the new latest version when they commit. A reader that keeps the
+     * returned object therefore sees one consistent version for as long as
+     * it uses it, without locking and without holding up writers. Its
+     * collections are read from disk the first time they are accessed.</p>
+     *
+     * <p>Data stored with an older schema is migrated before it is
+     * returned; threads loading meanwhile wait until the migration has
+     * been committed.</p>
+     *
+     * <p>Inside {@link #runInTransaction(Function)} this returns the
+     * transaction's own version instead. Changing the returned object
+     * outside a transaction still works, but other readers see the change
+     * as it is being made.</p>
+     *
      * @return the loaded database as a {@link JSONObject}
      * @throws RuntimeException if the file cannot be read
      */
 
     public static JSONObject load() {
+        Transaction tx = currentTransaction.get();
+        if (tx != null) {
+            return tx.view;
+        }
+
+        if (!Files.exists(Paths.get(PATH))) {
+            JSONObject empty = new JSONObject();
+            empty.put("users", new JSONArray());
+            empty.put("books", new JSONArray());
+            empty.put("loans", new JSONArray());
+            save(empty);
+        }
+
+        synchronized (FileDatabase.class) {
+            awaitUpgrade();
+            JSONObject resident = resident();
+            if (resident != null) return resident;
+        }
+
+        // read under the write lock, so that data needing an upgrade is
+        // migrated before any other thread can load it
+        writeLock.lock();
         try {
-            if (!Files.exists(Paths.get(PATH))) {
-                JSONObject empty = new JSONObject();
-                empty.put("users", new JSONArray());
-                empty.put("books", new JSONArray());
-                empty.put("loans", new JSONArray());
-                save(empty);
-            }
+            JSONObject db;
+            boolean legacyLayout;
+            int storedSchema;
 
-            String content = Files.readString(Paths.get(PATH));
-            return new JSONObject(content);
+            synchronized (FileDatabase.class) {
+                JSONObject resident = resident();
+                if (resident != null) return resident;
 
-        } catch (Exception e) {
+                cacheMisses++;
+                try {
+                    legacyLayout = readRoot();
+                } catch (Exception e) {
+                    throw new RuntimeException("Error reading JSON file", e);
+                }
+                storedSchema = schemaVersion;
+                db = cached;
+                if (!legacyLayout && storedSchema >= SchemaMigrations.CURRENT) return db;
+
+                upgrading = Thread.currentThread();
+            }
+
+            // collections found inside library.json are moved to their segments,
+            // and data stored by older versions is migrated, once
+            try {
+                return upgrade(storedSchema);
+            } finally {
+                synchronized (FileDatabase.class) {
+                    upgrading = null;
+                    FileDatabase.class.notifyAll();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    /**
+     * Returns the in-memory copy if it is still current. Called with the
+     * monitor held.
+     *
+     * @return the cached database, or {@code null} if the files must be read
+     */
+    private static JSONObject resident() {
+        // while our own snapshot is being written the files change
+        // under us, but the resident copy is already newer than them
+        try {
+            if (cached == null || !PATH.equals(cachedPath)
+                    || (!writing && (changed(root()) || changed(journalPath())))) {
+                return null;
+            }
+            if (!writing && reloadChangedSegments()) {
+                cacheMisses++;
+            } else {
+                cacheHits++;
+            }
+            return cached;
+        } catch (IOException e) {
             throw new RuntimeException("Error reading JSON file", e);
         }
     }
+    /**
+     * Waits while another thread migrates data it has just read, so that
+     * records are never seen in the format of an older schema. The thread
+     * doing the upgrade holds the write lock until it is committed, and
+     * threads holding the write lock never wait here. Called with the
+     * monitor held.
+     */
+    private static void awaitUpgrade() {
+        while (upgrading != null && upgrading != Thread.currentThread()) {
+            try {
+                FileDatabase.class.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while the database was being upgraded", e);
+            }
+        }
+    }
+    /**
+     * Loads the latest committed version with every collection read into
+     * it, for work that walks the whole database for a long time, such as
+     * exports.
+     *
+     * <p>The version never changes afterwards (see {@link #load()}), and it
+     * no longer depends on segment files that later commits may replace,
+     * so everything read from it belongs to one consistent state. Nothing
+     * is locked while it is used, and no second copy of the data is made.</p>
+     *
+     * @return a complete, consistent version of the database
+     */
+    public static JSONObject loadSnapshot() {
+        JSONObject db = load();
+        if (db instanceof LazyDatabase lazy) {
+            synchronized (FileDatabase.class) {
+                lazy.loadAll();
+            }
+        }
+        return db;
+    }
     /**
      * Saves the provided JSON object to disk as the current database state.
      *
+     * <p>The saved object becomes the in-memory copy returned by later loads.
+     * The call returns once a snapshot containing this state is safely on
+     * disk; concurrent saves may be folded into the same write. In
+     * write-behind mode it returns right away instead.</p>
+     *
      * @param json the database object to save
      * @throws RuntimeException if writing to disk fails
      */
     public static void save(JSONObject json) {
+        Transaction tx = currentTransaction.get();
+        if (tx != null) {
+            tx.db = json;
+            tx.full = true;
+            return;
+        }
+        commit(json, SEGMENTS, SEGMENTS, true);
+    }
+    /**
+     * Persists a change to a single record of a collection.
+     *
+     * <p>The record must already be part of {@code db} (added or modified
+     * in place by the caller). In journal mode only the record is appended
+     * to the log; otherwise the collection's segment is saved.</p>
+     *
+     * @param db         the database the record belongs to
+     * @param collection name of the collection ("books", "cds", "users", ...)
+     * @param record     the new or modified record
+     */
+    public static void saveRecord(JSONObject db, String collection, JSONObject record) {
+        saveRecords(db, collection, List.of(record));
+    }
+    /**
+     * Persists changes to several records of one collection at once.
+     *
+     * @param db         the database the records belong to
+     * @param collection name of the collection
+     * @param records    the new or modified records; nothing is written if empty
+     * @see #saveRecord(JSONObject, String, JSONObject)
+     */
+    public static void saveRecords(JSONObject db, String collection, List<JSONObject> records) {
+        if (records.isEmpty()) return;
+
+        if (db instanceof LazyDatabase lazy) lazy.reindex(collection, records);
+
+        List<JSONObject> entries = new ArrayList<>();
+        for (JSONObject record : records) {
+            entries.add(Journal.put(collection, record));
+        }
+        append(db, collection, entries);
+    }
+    /**
+     * Persists the removal of a record from a collection.
+     *
+     * <p>The caller is expected to have removed the record from {@code db} already.</p>
+     *
+     * @param db         the database the record was removed from
+     * @param collection name of the collection
+     * @param record     the removed record
+     */
+    public static void deleteRecord(JSONObject db, String collection, JSONObject record) {
+        String keyField = Journal.keyField(collection);
+        String key = keyField == null ? null : record.optString(keyField, null);
+        append(db, collection, List.of(Journal.delete(collection, key)));
+    }
+    /**
+     * Returns one collection of the database, reading only its segment if
+     * it has not been loaded yet.
+     *
+     * @param collection collection name ("users", "books", "cds", "loans")
+     * @return the shared in-memory collection
+     */
+    public static JSONArray loadCollection(String collection) {
+        return load().getJSONArray(collection);
+    }
+    /**
+     * Saves a single collection to its segment file, leaving the others untouched.
+     *
+     * @param db         the database holding the collection
+     * @param collection name of the collection
+     */
+    public static void saveCollection(JSONObject db, String collection) {
+        Transaction tx = currentTransaction.get();
+        if (tx != null) {
+            tx.db = db;
+            tx.collections.add(collection);
+            tx.journaled = false;
+            return;
+        }
+        if (SEGMENTS.contains(collection)) {
+            commit(db, List.of(collection), List.of(collection), false);
+        } else {
+            commit(db, List.of(collection), List.of(), true);
+        }
+    }
+    /**
+     * Runs a read-modify-write change as one transaction.
+     *
+     * <p>{@code work} receives the loaded database, modifies it and reports
+     * its changes through the usual calls ({@link #saveRecord(JSONObject, String, JSONObject)},
+     * {@link #deleteRecord(JSONObject, String, JSONObject)}, {@link #save(JSONObject)}, ...).
+     * Those calls are only recorded; when {@code work} returns, all of its
+     * changes are committed together as a single journal append or snapshot
+     * write.</p>
+     *
+     * <p>Transactions are serializable: they run one at a time, so a
+     * transaction never sees another one half-applied. {@code work} changes
+     * a private copy-on-write version of the database (see {@link #load()}),
+     * which replaces the latest version in one step when the transaction
+     * commits; readers are never blocked and never see a change before it
+     * is committed. The lock is released once the new version is published,
+     * so transactions that finish close together can still share one disk
+     * write. If {@code work} throws, or returns without saving anything,
+     * its version is simply discarded. A transaction started inside another
+     * one simply becomes part of it.</p>
+     *
+     * <p>With {@link #useProcessLock(boolean)} enabled, a transaction whose
+     * database was changed by another process in the meantime is rolled
+     * back and run again on the new state, up to three times in all.
+     * {@code work} must therefore not have effects outside the database.</p>
+     *
+     * @param work the change to apply; its result is returned
+     * @param <T>  result type
+     * @return what {@code work} returned
+     * @throws WriteConflictException if other processes kept committing first
+     * @throws RuntimeException if {@code work} fails or the commit cannot be written
+     */
+    public static <T> T runInTransaction(Function<JSONObject, T> work) {
+        if (currentTransaction.get() != null) {
+            return work.apply(load());
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return runOnce(work);
+            } catch (WriteConflictException e) {
+                if (attempt == CONFLICT_ATTEMPTS) throw e;
+            }
+        }
+    }
+    /**
+     * Shares the database safely with other processes.
+     *
+     * <p>While enabled, every commit holds an exclusive lock on
+     * {@code library.lock} from the moment it checks the version on disk
+     * until its files are written, and a change based on an older version
+     * than the one on disk fails with a {@link WriteConflictException}
+     * instead of overwriting the other process's work. Saves of one process
+     * are then written one at a time rather than grouped.</p>
+     *
+     * @param enabled {@code true} to lock the database files while writing
+     */
+    public static synchronized void useProcessLock(boolean enabled) {
+        processLocking = enabled;
+    }
+    /**
+     * Returns the version of the database held in memory, which grows by
+     * one with every commit.
+     *
+     * @return the version last read from or written to disk
+     */
+    public static synchronized long getVersion() {
+        return version;
+    }
+    /**
+     * Returns the schema version of the stored data. Databases written with
+     * an older schema are migrated when they are first loaded, so after a
+     * load this is the version the current code writes.
+     *
+     * @return the {@code "schemaVersion"} of library.json
+     */
+    public static synchronized int getSchemaVersion() {
+        return schemaVersion;
+    }
+    /**
+     * Writes the current in-memory database as a fresh snapshot and empties the journal.
+     */
+    public static void checkpoint() {
+        if (currentTransaction.get() != null) {
+            save(load());
+            return;
+        }
+        // the current version is written again as it is, so the models
+        // decoded from it stay valid
+        commit(load(), List.of(), SEGMENTS, true);
+    }
+    /**
+     * Enables or disables journal mode.
+     *
+     * <p>Switching modes checkpoints any pending journal entries first.</p>
+     *
+     * @param enabled {@code true} to append record changes to the journal
+     */
+    public static void useJournal(boolean enabled) {
+        boolean wasEnabled;
+        synchronized (FileDatabase.class) {
+            wasEnabled = journalEnabled;
+            journalEnabled = enabled;
+        }
+        if (wasEnabled && !enabled && Files.exists(journalPath())) {
+            checkpoint();
+        }
+    }
+    /**
+     * Sets how many journal entries may accumulate before the snapshot
+     * is rewritten automatically.
+     *
+     * @param entries maximum journal length
+     */
+    public static synchronized void setCheckpointThreshold(int entries) {
+        checkpointThreshold = entries;
+    }
+    /**
+     * Returns how many entries the journal currently holds on top of the
+     * snapshot, which is how many a restart would have to replay.
+     *
+     * @return journal length
+     */
+    public static synchronized int getJournalEntries() {
+        return journalEntries;
+    }
+    /**
+     * Returns the size of the journal on top of the snapshot.
+     *
+     * @return journal length in bytes
+     */
+    public static synchronized long getJournalBytes() {
+        return journalBytes;
+    }
+    /**
+     * Starts or stops the background checkpoint thread.
+     *
+     * <p>While it runs, reaching {@link #setCheckpointThreshold(int)} entries
+     * no longer makes the saving call write the snapshot; the thread does it
+     * instead. It also checkpoints once the journal is larger than
+     * {@link #setCheckpointBytes(long)} or its oldest entry is older than
+     * {@link #setCheckpointAge(long)}. Entries appended while a checkpoint
+     * is being written are kept in the journal for the next one.</p>
+     *
+     * @param enabled {@code true} to checkpoint in the background
+     */
+    public static synchronized void useBackgroundCheckpoints(boolean enabled) {
+        if (enabled && checkpointer == null) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "library-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointer.scheduleWithFixedDelay(FileDatabase::checkpointIfDue,
+                    CHECKPOINT_POLL_MILLIS, CHECKPOINT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } else if (!enabled && checkpointer != null) {
+            checkpointer.shutdown();
+            checkpointer = null;
+        }
+    }
+    /**
+     * Sets the journal size at which the background thread checkpoints.
+     *
+     * @param bytes maximum journal size in bytes
+     */
+    public static synchronized void setCheckpointBytes(long bytes) {
+        checkpointBytes = bytes;
+    }
+    /**
+     * Sets how long the oldest journal entry may wait before the background
+     * thread checkpoints.
+     *
+     * @param millis maximum journal age in milliseconds
+     */
+    public static synchronized void setCheckpointAge(long millis) {
+        checkpointAgeMillis = millis;
+    }
+    /**
+     * Returns when a full snapshot was last written by this process.
+     *
+     * @return time of the last checkpoint, or {@code null} if there was none
+     */
+    public static synchronized Instant getLastCheckpointTime() {
+        return lastCheckpoint;
+    }
+    /**
+     * Enables or disables write-behind mode.
+     *
+     * <p>While enabled, saves publish their change in memory and return
+     * without waiting for the disk. A background thread writes the snapshot
+     * once the oldest unwritten save is {@link #setWriteBehindWindow(long)}
+     * old, or sooner once {@link #setWriteBehindLimit(int)} saves are
+     * waiting; saves that arrive in the meantime share that write. A
+     * shutdown hook writes whatever is still pending when the JVM exits, so
+     * only a crash can lose changes, and never more than one window's worth.
+     * A failed write is retried with the next one.</p>
+     *
+     * <p>With {@link #useProcessLock(boolean)} enabled saves stay
+     * synchronous, since a conflict with another process has to be reported
+     * to the caller. Disabling write-behind writes pending saves first.</p>
+     *
+     * @param enabled {@code true} to write snapshots in the background
+     */
+    public static void useWriteBehind(boolean enabled) {
+        synchronized (FileDatabase.class) {
+            writeBehind = enabled;
+            if (enabled && writeBehindFlusher == null) {
+                writeBehindFlusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "library-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            if (enabled && !shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(FileDatabase::flushOnShutdown, "library-shutdown-flush"));
+                shutdownHookAdded = true;
+            }
+        }
+        if (!enabled) {
+            flushPending();
+            synchronized (FileDatabase.class) {
+                if (writeBehindFlusher != null && !writeBehind) {
+                    writeBehindFlusher.shutdown();
+                    writeBehindFlusher = null;
+                }
+            }
+        }
+    }
+    /**
+     * Sets how long a write-behind save may stay in memory only.
+     *
+     * @param millis durability window in milliseconds
+     */
+    public static synchronized void setWriteBehindWindow(long millis) {
+        writeBehindMillis = millis;
+    }
+    /**
+     * Sets how many write-behind saves may wait before they are written
+     * without waiting for the rest of the window.
+     *
+     * @param saves maximum number of unwritten saves
+     */
+    public static synchronized void setWriteBehindLimit(int saves) {
+        writeBehindSaves = saves;
+    }
+    /**
+     * Blocks until every save made so far is on disk.
+     *
+     * @throws RuntimeException if the pending snapshot cannot be written;
+     *                          it stays queued for the next attempt
+     */
+    public static void flushPending() {
         try {
-            Files.writeString(Paths.get(PATH), json.toString(4));
+            writeUnflushed();
         } catch (Exception e) {
             throw new RuntimeException("Error saving JSON file", e);
         }
     }
+    /**
+     * Returns how far the files lag behind memory: the age of the oldest
+     * save that is not on disk yet.
+     *
+     * @return flush lag in milliseconds, 0 if everything is written
+     */
+    public static synchronized long getFlushLag() {
+        long oldest = flushingSince != 0 ? flushingSince : unflushedSince;
+        return oldest == 0 ? 0 : Math.max(1, System.currentTimeMillis() - oldest);
+    }
+    /**
+     * Returns how many write-behind saves are waiting for the next write.
+     *
+     * @return number of saves that are only in memory
+     */
+    public static synchronized int getUnflushedSaves() {
+        return unflushedSaves;
+    }
+    /**
+     * Sets how long the first of several concurrent saves waits for others
+     * to join its write. Zero writes immediately.
+     *
+     * @param millis group-commit window in milliseconds
+     */
+    public static void setGroupCommitWindow(long millis) {
+        groupCommit.setWindowMillis(millis);
+    }
+    /**
+     * Returns how many saves were coalesced into the most recent snapshot write.
+     *
+     * @return saves covered by the last flush
+     */
+    public static int getLastFlushBatchSize() {
+        return groupCommit.lastBatch();
+    }
+    /**
+     * Returns how many physical snapshot writes have been performed.
+     *
+     * @return number of flushes since startup
+     */
+    public static long getFlushCount() {
+        return groupCommit.flushes();
+    }
+    /**
+     * Returns how many save requests have been written, across all flushes.
+     *
+     * @return number of saves since startup
+     */
+    public static long getFlushedSaveCount() {
+        return groupCommit.saves();
+    }
+    /**
+     * Chooses between compact (default) and indented snapshots on disk.
+     * Both formats can always be loaded.
+     *
+     * @param pretty {@code true} to indent saved snapshots
+     */
+    public static synchronized void usePrettyFormat(boolean pretty) {
+        prettyFormat = pretty;
+    }
+    /**
+     * Chooses between JSON (default) and binary segment files. A collection
+     * is converted the next time it is saved; both formats can always be
+     * loaded. Binary segments spare startup from parsing the catalog,
+     * since records are parsed on first access; opening one still takes
+     * time in proportion to its number of records, and a segment holds at
+     * most 2 GB.
+     *
+     * @param binary {@code true} to write binary segments
+     */
+    public static synchronized void useBinarySegments(boolean binary) {
+        binarySegments = binary;
+    }
+    /**
+     * Chooses between plain (default) and GZIP-compressed JSON segment
+     * files. Compression is applied while the segment is streamed to disk
+     * and undone while it is read; compressed and plain segments can always
+     * be loaded. Binary segments are never compressed, since they are read
+     * by mapping the file.
+     *
+     * @param compressed {@code true} to compress saved segments
+     */
+    public static synchronized void useCompressedSegments(boolean compressed) {
+        compressedSegments = compressed;
+    }
+    /**
+     * Sets the compression level of compressed segments, from 1 (fastest)
+     * to 9 (smallest). The default is that of {@link Deflater}.
+     *
+     * @param level compression level
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public static synchronized void setCompressionLevel(int level) {
+        if ((level < 1 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        compressionLevel = level;
+    }
+    /**
+     * Writes an indented, human-readable copy of the current database,
+     * with every collection inline in a single file.
+     *
+     * @param target path of the file to create or replace
+     * @throws RuntimeException if the file cannot be written
+     */
+    public static void exportPretty(String target) {
+        // a complete version that no later commit changes
+        String content = loadSnapshot().toString(4);
+
+        try {
+            AtomicFile.write(Paths.get(target), content);
+        } catch (Exception e) {
+            throw new RuntimeException("Error exporting JSON file", e);
+        }
+    }
     /**
      * Clears all database contents and replaces them with empty arrays.
      *
@@ -91,4 +824,799 @@ public class FileDatabase {
         empty.put("loans", new JSONArray());
         save(empty);
     }
+    /**
+     * Drops the in-memory copy so the next {@link #load()} reads the files again.
+     */
+    public static void invalidateCache() {
+        flushPending();
+        synchronized (FileDatabase.class) {
+            cached = null;
+        }
+    }
+    /**
+     * Returns how many loads were served from the in-memory copy.
+     *
+     * @return number of cache hits since startup
+     */
+    public static synchronized long getCacheHits() {
+        return cacheHits;
+    }
+    /**
+     * Returns how many loads found library.json or a loaded segment changed on disk.
+     *
+     * @return number of cache misses since startup
+     */
+    public static synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+    /**
+     * Returns how many times a collection segment was read from disk.
+     *
+     * @return number of collection loads since startup
+     */
+    public static synchronized long getCollectionLoads() {
+        return collectionLoads;
+    }
+
+    /**
+     * @param collection collection name
+     * @return {@code true} if the collection is currently held in memory
+     */
+    static synchronized boolean isLoaded(String collection) {
+        return cached != null && cached.isLoaded(collection);
+    }
+
+    // ===== Reading =====
+
+    /**
+     * Reads library.json and prepares a database whose collections are
+     * loaded on first access.
+     *
+     * @return {@code true} if library.json still held collections inline
+     */
+    private static boolean readRoot() throws IOException {
+        stamps.clear();
+
+        Path rootPath = root();
+        JSONObject fields = JsonReader.readObject(rootPath);
+        remember(rootPath);
+
+        Journal journal = journal();
+        Journal.Scan scan = journal.scan();
+        journalEntries = scan.entries();
+        journalBytes = scan.size();
+        journalDamaged = scan.damaged();
+        journalStarted = journalEntries > 0
+                ? Files.readAttributes(journalPath(), BasicFileAttributes.class).creationTime().toMillis()
+                : 0;
+        remember(journalPath());
+
+        version = Math.max(fields.optLong("version", 0), scan.lastVersion());
+        fields.remove("version");
+        schemaVersion = fields.optInt("schemaVersion", 0);
+        fields.remove("schemaVersion");
+
+        boolean legacyLayout = false;
+        for (String name : SEGMENTS) {
+            if (fields.optJSONArray(name) != null) {
+                legacyLayout = true;
+                journal.replay(fields, name);
+                // held inline, so whatever its segment holds is not newer
+                remember(segment(name));
+                remember(binarySegment(name));
+            }
+        }
+
+        cached = new LazyDatabase(fields, SEGMENTS, FileDatabase::readCollection, FileDatabase.class);
+        cachedPath = PATH;
+        return legacyLayout;
+    }
+
+    /**
+     * Reads one collection's segment and applies its journal entries.
+     * Called by {@link LazyDatabase} on first access.
+     */
+    private static JSONArray readCollection(String collection) {
+        synchronized (FileDatabase.class) {
+            try {
+                Path segmentPath = segment(collection);
+                Path binaryPath = binarySegment(collection);
+                JSONArray records;
+                if (Files.exists(binaryPath)) {
+                    records = BinarySegment.read(binaryPath);
+                } else {
+                    records = Files.exists(segmentPath) ? readSegment(segmentPath) : new JSONArray();
+                }
+                remember(segmentPath);
+                remember(binaryPath);
+
+                if (journalEntries > 0) {
+                    JSONObject holder = new JSONObject().put(collection, records);
+                    journal().replay(holder, collection);
+                    records = holder.getJSONArray(collection);
+                }
+
+                collectionLoads++;
+                return records;
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading JSON file", e);
+            }
+        }
+    }
+
+    /**
+     * Publishes a new version that reads again every loaded collection
+     * whose segment changed on disk since it was read. The version held
+     * until now is left alone, since readers may still be using it.
+     *
+     * @return {@code true} if any collection is to be read again
+     */
+    private static boolean reloadChangedSegments() throws IOException {
+        List<String> changed = new ArrayList<>();
+        for (String name : SEGMENTS) {
+            if (cached.isLoaded(name) && (changed(segment(name)) || changed(binarySegment(name)))) {
+                changed.add(name);
+            }
+        }
+        if (changed.isEmpty()) return false;
+
+        cached = cached.reloading(changed);
+        return true;
+    }
+
+    private static JSONArray readSegment(Path path) throws IOException {
+        return JsonReader.readArray(path);
+    }
+
+    // ===== Writing =====
+
+    /**
+     * Publishes {@code db} as the current state and waits until the given
+     * segments (and the database file, if requested) are written.
+     *
+     * @param changed collections whose records changed, whose decoded
+     *                models are dropped; segments that are only written
+     *                again keep theirs
+     */
+    private static void commit(JSONObject db, Collection<String> changed, Collection<String> segments,
+                               boolean root) {
+        // same lock order as transactions: writeLock, then the file lock
+        long ticket;
+        boolean locked;
+        writeLock.lock();
+        try {
+            locked = lockFiles();
+            try {
+                checkVersion(isResident(db));
+                ticket = publish(db, changed, segments, root);
+            } catch (RuntimeException | Error e) {
+                if (locked) processLock.release();
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (!locked && deferFlush(ticket)) return;
+        try {
+            awaitFlush(ticket);
+        } finally {
+            if (locked) processLock.release();
+        }
+    }
+
+    /**
+     * Makes {@code db} the current state and queues the given segments
+     * (and the database file, if requested) for the next write.
+     *
+     * @param changed collections whose records changed; see
+     *                {@link #commit(JSONObject, Collection, Collection, boolean)}
+     * @return ticket to wait for with {@link #awaitFlush(long)}
+     */
+    private static long publish(JSONObject db, Collection<String> changed, Collection<String> segments,
+                                boolean root) {
+        synchronized (FileDatabase.class) {
+            // segments are read back with the journal replayed over them, so
+            // while it has entries only a complete checkpoint may be written
+            if (journalEntries > 0 && !segments.isEmpty()) {
+                segments = SEGMENTS;
+                root = true;
+            }
+            cached = adopt(db);
+            cached.freeze();
+            cachedPath = PATH;
+            pending = cached;
+            changed.forEach(cached::invalidate);
+            dirtySegments.addAll(segments);
+            rootDirty |= root;
+            version++;
+            // whatever this code saves follows its own schema
+            schemaVersion = Math.max(schemaVersion, SchemaMigrations.CURRENT);
+            return groupCommit.enqueue();
+        }
+    }
+
+    private static void awaitFlush(long ticket) {
+        try {
+            groupCommit.await(ticket, FileDatabase::flush);
+        } catch (Exception e) {
+            synchronized (FileDatabase.class) {
+                cached = null;
+            }
+            throw new RuntimeException("Error saving JSON file", e);
+        }
+    }
+
+    /**
+     * Writes every dirty segment of the latest pending state. Called by the
+     * group-commit leader.
+     */
+    private static void flush() throws Exception {
+        Map<Path, Object> writes = new LinkedHashMap<>();
+        List<Path> replaced = new ArrayList<>();
+        boolean complete;
+        Path journalPath;
+        int entriesBefore;
+        long bytesBefore;
+
+        synchronized (FileDatabase.class) {
+            if (pending == null) return;
+
+            complete = rootDirty && dirtySegments.containsAll(SEGMENTS);
+
+            for (String name : dirtySegments) {
+                // a collection that was never loaded is unchanged on disk, unless
+                // a full snapshot has to fold its journal entries in
+                if (!pending.isLoaded(name) && !(complete && journalEntries > 0)) continue;
+
+                JSONArray records = pending.optJSONArray(name);
+                if (records == null) records = new JSONArray();
+
+                if (binarySegments) {
+                    writes.put(binarySegment(name), new BinaryRecords(records(records)));
+                    replaced.add(segment(name));
+                } else {
+                    Object content = snapshot(records);
+                    if (compressedSegments) {
+                        content = new Compressed(content instanceof String text
+                                ? StandardCharsets.UTF_8.encode(text) : content, compressionLevel);
+                    }
+                    writes.put(segment(name), content);
+                    replaced.add(binarySegment(name));
+                }
+            }
+            // library.json is rewritten every time, since it carries the version
+            writes.put(root(), snapshot(rootFields(pending)
+                    .put("version", version)
+                    .put("schemaVersion", schemaVersion)));
+
+            dirtySegments.clear();
+            rootDirty = false;
+            pending = null;
+
+            if (complete) recoverJournal();
+            journalPath = journalPath();
+            entriesBefore = journalEntries;
+            bytesBefore = journalBytes;
+            writing = true;
+        }
+
+        try {
+            for (Map.Entry<Path, Object> write : writes.entrySet()) {
+                if (write.getValue() instanceof String text) {
+                    AtomicFile.write(write.getKey(), text);
+                } else if (write.getValue() instanceof BinaryRecords binary) {
+                    AtomicFile.write(write.getKey(), channel -> BinarySegment.write(channel, binary.records(), snapshotWriter));
+                } else if (write.getValue() instanceof Compressed gzip) {
+                    AtomicFile.write(write.getKey(), channel -> snapshotWriter.writeCompressed(channel, gzip.value(), gzip.level()));
+                } else {
+                    AtomicFile.write(write.getKey(), channel -> snapshotWriter.write(channel, write.getValue()));
+                }
+            }
+
+            // a segment saved in the other format must not shadow the new file
+            for (Path old : replaced) {
+                Files.deleteIfExists(old);
+            }
+
+            synchronized (FileDatabase.class) {
+                // a full snapshot contains everything the journal described
+                // when it was taken; entries appended since are kept
+                if (complete) {
+                    if (journalBytes == bytesBefore) {
+                        Files.deleteIfExists(journalPath);
+                    } else {
+                        new Journal(journalPath).dropPrefix(bytesBefore);
+                    }
+                    journalEntries -= entriesBefore;
+                    journalBytes -= bytesBefore;
+                    journalStarted = journalEntries > 0 ? System.currentTimeMillis() : 0;
+                    lastCheckpoint = Instant.now();
+                }
+
+                if (journalPath.equals(journalPath())) {
+                    for (Path written : writes.keySet()) {
+                        remember(written);
+                    }
+                    for (Path old : replaced) {
+                        remember(old);
+                    }
+                    remember(journalPath);
+                }
+            }
+        } finally {
+            synchronized (FileDatabase.class) {
+                writing = false;
+            }
+        }
+    }
+
+    private static void append(JSONObject db, String collection, List<JSONObject> entries) {
+        Transaction tx = currentTransaction.get();
+        if (tx != null) {
+            tx.db = db;
+            tx.collections.add(collection);
+            tx.entries.addAll(entries);
+            return;
+        }
+        append(db, List.of(collection), entries);
+    }
+
+    /**
+     * Appends journal entries for changes to the given collections, or
+     * saves their segments when the journal is off or cannot describe them.
+     */
+    private static void append(JSONObject db, Collection<String> collections, List<JSONObject> entries) {
+        writeLock.lock();
+        boolean locked = false;
+        try {
+            locked = lockFiles();
+            checkVersion(isResident(db));
+            appendLocked(db, collections, entries);
+        } finally {
+            if (locked) processLock.release();
+            writeLock.unlock();
+        }
+    }
+
+    private static void appendLocked(JSONObject db, Collection<String> collections, List<JSONObject> entries) {
+        boolean journaled = false;
+        boolean checkpointNeeded = false;
+
+        synchronized (FileDatabase.class) {
+            if (journalEnabled && !entries.isEmpty()
+                    && collections.stream().allMatch(c -> Journal.keyField(c) != null)) {
+                try {
+                    for (JSONObject entry : entries) {
+                        entry.put("version", version + 1);
+                    }
+                    recoverJournal();
+                    Journal journal = journal();
+                    journal.append(entries);
+                    if (journalEntries == 0) journalStarted = System.currentTimeMillis();
+                    journalEntries += entries.size();
+                    journalBytes = journal.size();
+                    version++;
+
+                    cached = adopt(db);
+                    cached.freeze();
+                    cachedPath = PATH;
+                    collections.forEach(cached::invalidate);
+                    remember(journalPath());
+                } catch (Exception e) {
+                    cached = null;
+                    throw new RuntimeException("Error writing journal file", e);
+                }
+                journaled = true;
+                checkpointNeeded = journalEntries >= checkpointThreshold;
+                if (checkpointNeeded && checkpointer != null) {
+                    checkpointer.execute(FileDatabase::checkpointIfDue);
+                    checkpointNeeded = false;
+                }
+            }
+        }
+
+        if (!journaled) {
+            commit(db, collections, segmentsOf(collections), !SEGMENTS.containsAll(collections));
+        } else if (checkpointNeeded) {
+            // the journaled collections were invalidated above
+            commit(db, List.of(), SEGMENTS, true);
+        }
+    }
+
+    /**
+     * Rewrites a database read in an older layout or schema: migrates its
+     * records and saves every collection, as one transaction.
+     *
+     * @param from schema version the data was stored with
+     * @return the upgraded database
+     */
+    private static JSONObject upgrade(int from) {
+        return runInTransaction(db -> {
+            SchemaMigrations.migrate(db, from);
+            save(db);
+            return db;
+        });
+    }
+
+    /**
+     * Cuts off a damaged journal tail found when the database was read,
+     * before anything is appended behind it. Called with the monitor held
+     * by writers, which also hold the file lock when it is in use.
+     */
+    private static void recoverJournal() throws IOException {
+        if (!journalDamaged) return;
+
+        journal().recover();
+        journalBytes = journal().size();
+        journalDamaged = false;
+        remember(journalPath());
+    }
+
+    /**
+     * Checkpoints if the journal has outgrown one of its limits. Run by the
+     * background checkpoint thread.
+     *
+     * @return {@code true} if a checkpoint was written
+     */
+    static boolean checkpointIfDue() {
+        synchronized (FileDatabase.class) {
+            boolean due = journalEntries > 0
+                    && (journalEntries >= checkpointThreshold
+                    || journalBytes >= checkpointBytes
+                    || System.currentTimeMillis() - journalStarted >= checkpointAgeMillis);
+            if (!due) return false;
+        }
+
+        try {
+            checkpoint();
+            return true;
+        } catch (RuntimeException e) {
+            // the journal is intact; the next run tries again
+            return false;
+        }
+    }
+
+    // ===== Write-behind =====
+
+    /**
+     * Leaves a published save to the background writer if write-behind
+     * mode is on.
+     *
+     * @param ticket the save's group-commit ticket
+     * @return {@code true} if the caller does not have to wait for the disk
+     */
+    private static synchronized boolean deferFlush(long ticket) {
+        if (!writeBehind) return false;
+
+        if (unflushedSaves++ == 0) unflushedSince = System.currentTimeMillis();
+        unflushedTicket = Math.max(unflushedTicket, ticket);
+        if (unflushedSaves >= writeBehindSaves) {
+            scheduleFlush(0);
+        } else if (scheduledFlush == null) {
+            scheduleFlush(writeBehindMillis);
+        }
+        return true;
+    }
+
+    /** Called with the monitor held. */
+    private static void scheduleFlush(long delayMillis) {
+        if (writeBehindFlusher == null) return;
+        if (scheduledFlush != null) {
+            if (delayMillis > 0) return;
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = writeBehindFlusher.schedule(FileDatabase::flushBehind, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Run by the write-behind thread when a window closes. */
+    private static void flushBehind() {
+        try {
+            writeUnflushed();
+        } catch (Exception e) {
+            // still queued; the next window tries again
+        }
+    }
+
+    private static void flushOnShutdown() {
+        try {
+            flushPending();
+        } catch (RuntimeException e) {
+            System.err.println("Could not save pending library changes: " + e.getCause());
+        }
+    }
+
+    /**
+     * Writes every save that write-behind mode has not written yet, after
+     * waiting for a background write that is already running.
+     */
+    private static void writeUnflushed() throws Exception {
+        synchronized (writeBehindLock) {
+            long ticket;
+            synchronized (FileDatabase.class) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (unflushedSaves == 0) return;
+
+                ticket = unflushedTicket;
+                flushingSince = unflushedSince;
+                unflushedSaves = 0;
+                unflushedSince = 0;
+            }
+
+            try {
+                groupCommit.await(ticket, FileDatabase::flush);
+            } catch (Exception e) {
+                synchronized (FileDatabase.class) {
+                    // the files may be half-written: queue the whole state again
+                    if (cached != null && PATH.equals(cachedPath)) {
+                        pending = cached;
+                        dirtySegments.addAll(SEGMENTS);
+                        rootDirty = true;
+                        unflushedSaves++;
+                        unflushedSince = flushingSince;
+                        unflushedTicket = groupCommit.enqueue();
+                        scheduleFlush(writeBehindMillis);
+                    }
+                }
+                throw e;
+            } finally {
+                synchronized (FileDatabase.class) {
+                    flushingSince = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} as one transaction and commits what it recorded.
+     *
+     * @throws WriteConflictException if another process committed first;
+     *                                nothing has been published
+     */
+    private static <T> T runOnce(Function<JSONObject, T> work) {
+        T result;
+        long ticket;
+        boolean locked;
+        writeLock.lock();
+        try {
+            Transaction tx = new Transaction(((LazyDatabase) load()).copyOnWrite());
+            currentTransaction.set(tx);
+            try {
+                result = work.apply(tx.view);
+            } finally {
+                currentTransaction.remove();
+            }
+
+            // the file lock is kept until the snapshot is on disk
+            locked = lockFiles();
+            try {
+                checkVersion(tx.db != null);
+                ticket = publish(tx);
+            } catch (RuntimeException | Error e) {
+                if (locked) processLock.release();
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (ticket > 0 && !locked && deferFlush(ticket)) return result;
+        try {
+            if (ticket > 0) {
+                awaitFlush(ticket);
+            }
+        } finally {
+            if (locked) processLock.release();
+        }
+        return result;
+    }
+
+    /**
+     * Commits what a finished transaction recorded.
+     *
+     * @return ticket of a queued snapshot write, or 0 if nothing is left to wait for
+     */
+    private static long publish(Transaction tx) {
+        if (tx.db == null) return 0;
+
+        if (tx.full) {
+            return publish(tx.db, SEGMENTS, SEGMENTS, true);
+        }
+        if (tx.journaled && journalEnabled) {
+            append(tx.db, tx.collections, tx.entries);
+            return 0;
+        }
+        return publish(tx.db, tx.collections, segmentsOf(tx.collections),
+                !SEGMENTS.containsAll(tx.collections));
+    }
+
+    private static List<String> segmentsOf(Collection<String> collections) {
+        List<String> segments = new ArrayList<>();
+        for (String name : collections) {
+            if (SEGMENTS.contains(name)) segments.add(name);
+        }
+        return segments;
+    }
+
+    /** Changes recorded by the transaction running on the current thread. */
+    private static final class Transaction {
+        final LazyDatabase view;
+        JSONObject db;
+        boolean full;
+        boolean journaled = true;
+        final Set<String> collections = new LinkedHashSet<>();
+        final List<JSONObject> entries = new ArrayList<>();
+
+        Transaction(LazyDatabase view) {
+            this.view = view;
+        }
+    }
+
+    /**
+     * Makes {@code db} the resident database. A plain {@link JSONObject}
+     * passed to {@link #save(JSONObject)} is complete by definition, so any
+     * collection it lacks is treated as empty.
+     */
+    private static LazyDatabase adopt(JSONObject db) {
+        if (db instanceof LazyDatabase lazy) return lazy;
+
+        LazyDatabase adopted = new LazyDatabase(db, List.of(), FileDatabase::readCollection, FileDatabase.class);
+        for (String name : SEGMENTS) {
+            if (!adopted.has(name)) adopted.put(name, new JSONArray());
+        }
+        return adopted;
+    }
+
+    /**
+     * Captures what a file should contain once the lock is released: the
+     * formatted text in pretty mode, otherwise the value itself, streamed
+     * by {@link SnapshotWriter}. Collections are copied shallowly so that
+     * records added later are not picked up halfway through a write.
+     */
+    private static Object snapshot(Object json) {
+        if (prettyFormat) return format(json);
+
+        if (json instanceof JSONArray array) {
+            return records(array);
+        }
+        return json;
+    }
+
+    /**
+     * Shallow copy of a collection. Records of a binary segment that were
+     * never accessed are kept as their encoded bytes and copied unchanged.
+     */
+    private static List<Object> records(JSONArray array) {
+        return CopyOnWriteRecords.slots(array);
+    }
+
+    /** A collection to be written as a binary segment. */
+    private record BinaryRecords(List<Object> records) {
+    }
+
+    /** A segment to be written GZIP-compressed. */
+    private record Compressed(Object value, int level) {
+    }
+
+    private static String format(Object json) {
+        if (json instanceof JSONArray array) {
+            return prettyFormat ? array.toString(4) : array.toString();
+        }
+        JSONObject object = (JSONObject) json;
+        return prettyFormat ? object.toString(4) : object.toString();
+    }
+
+    /**
+     * Returns the part of the database stored in library.json itself:
+     * every field except the segmented collections.
+     */
+    private static JSONObject rootFields(JSONObject db) {
+        JSONObject root = new JSONObject();
+        for (String key : db.keySet()) {
+            if (!SEGMENTS.contains(key)) {
+                root.put(key, db.get(key));
+            }
+        }
+        return root;
+    }
+
+    // ===== Cross-process locking =====
+
+    /**
+     * Takes the file lock if process locking is enabled.
+     *
+     * @return {@code true} if the caller must release it
+     */
+    private static boolean lockFiles() {
+        if (!isProcessLocking()) return false;
+        try {
+            processLock.acquire(lockPath());
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Error locking database file", e);
+        }
+    }
+
+    private static synchronized boolean isResident(JSONObject db) {
+        return db == cached;
+    }
+
+    private static synchronized boolean isProcessLocking() {
+        return processLocking;
+    }
+
+    /**
+     * Makes sure no other process committed since the database was read.
+     * Called with the file lock held, before anything is published.
+     *
+     * <p>Only a change made to a version read from disk can be stale; a
+     * plain {@link JSONObject} handed to {@link #save(JSONObject)} replaces
+     * the database outright and simply gets the next version.</p>
+     *
+     * @param basedOnRead whether the change was made to the loaded database
+     * @throws WriteConflictException if the change is based on a version
+     *                                older than the one now on disk
+     */
+    private static void checkVersion(boolean basedOnRead) {
+        if (!processLock.isHeldByCurrentThread()) return;
+
+        synchronized (FileDatabase.class) {
+            try {
+                if (PATH.equals(cachedPath) && !changed(root()) && !changed(journalPath())) return;
+
+                long onDisk = Files.exists(root()) ? JsonReader.readObject(root()).optLong("version", 0) : 0;
+                onDisk = Math.max(onDisk, journal().lastVersion());
+                if (onDisk <= version) return;
+
+                if (basedOnRead) {
+                    cached = null;
+                    throw new WriteConflictException(version, onDisk);
+                }
+                version = onDisk;
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading JSON file", e);
+            }
+        }
+    }
+
+    // ===== Files =====
+
+    private static Path root() {
+        return Paths.get(PATH);
+    }
+
+    private static Path segment(String collection) {
+        return Paths.get(base() + "." + collection + ".json");
+    }
+
+    private static Path binarySegment(String collection) {
+        return Paths.get(base() + "." + collection + ".bin");
+    }
+
+    private static String base() {
+        return PATH.endsWith(".json") ? PATH.substring(0, PATH.length() - 5) : PATH;
+    }
+
+    private static Path lockPath() {
+        return Paths.get(base() + ".lock");
+    }
+
+    private static Path journalPath() {
+        return Paths.get(PATH + ".journal");
+    }
+
+    private static Journal journal() {
+        return new Journal(journalPath());
+    }
+
+    private static boolean changed(Path path) throws IOException {
+        return !stamps.containsKey(path) || !Objects.equals(stamps.get(path), FileStamp.of(path));
+    }
+
+    private static void remember(Path path) throws IOException {
+        stamps.put(path, FileStamp.of(path));
+    }
 }
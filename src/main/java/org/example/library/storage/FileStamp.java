@@ -0,0 +1,34 @@
+package org.example.library.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Modification time and size of a file, used to tell whether an
+ * in-memory copy of the file is still current.
+ *
+ * @param modified last modification time
+ * @param size     size in bytes
+ */
+record FileStamp(FileTime modified, long size) {
+
+    /**
+     * Reads the stamp of a file.
+     *
+     * @param path file to inspect
+     * @return the file's stamp, or {@code null} if it does not exist
+     * @throws IOException if the attributes cannot be read
+     */
+    static FileStamp of(Path path) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStamp(attrs.lastModifiedTime(), attrs.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
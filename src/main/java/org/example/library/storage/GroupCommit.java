@@ -0,0 +1,103 @@
+package org.example.library.storage;
+
+/**
+ * Coalesces concurrent save requests into as few physical writes as possible.
+ *
+ * <p>Every caller takes a ticket with {@link #enqueue()} after publishing
+ * its change in memory, then calls {@link #await(long, Flush)}. The first
+ * caller to arrive becomes the leader: it waits for the commit window so
+ * that other savers can join, then performs one flush of the latest state
+ * on behalf of every ticket issued so far. Followers simply wait until a
+ * flush covering their ticket has completed.</p>
+ */
+final class GroupCommit {
+
+    /**
+     * A physical write of the latest in-memory state.
+     */
+    @FunctionalInterface
+    interface Flush {
+        void run() throws Exception;
+    }
+
+    private long windowMillis;
+
+    private long requested;
+    private long completed;
+    private boolean flushing;
+
+    private int lastBatch;
+    private long flushes;
+    private long saves;
+
+    GroupCommit(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Registers a save request.
+     *
+     * @return the ticket to pass to {@link #await(long, Flush)}
+     */
+    synchronized long enqueue() {
+        return ++requested;
+    }
+
+    /**
+     * Blocks until the state belonging to {@code ticket} is on disk,
+     * running the flush if no other thread is already doing so.
+     *
+     * @param ticket ticket returned by {@link #enqueue()}
+     * @param flush  writes the latest state
+     * @throws Exception if this thread performed the flush and it failed
+     */
+    void await(long ticket, Flush flush) throws Exception {
+        long window;
+
+        synchronized (this) {
+            while (completed < ticket && flushing) {
+                wait();
+            }
+            if (completed >= ticket) return;
+
+            flushing = true;
+            window = windowMillis;
+        }
+
+        boolean done = false;
+        long upTo = ticket;
+        try {
+            if (window > 0) Thread.sleep(window);
+
+            synchronized (this) {
+                upTo = requested;
+            }
+            flush.run();
+            done = true;
+        } finally {
+            synchronized (this) {
+                if (done) {
+                    lastBatch = (int) (upTo - completed);
+                    saves += lastBatch;
+                    flushes++;
+                    completed = upTo;
+                }
+                flushing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /** @return number of save requests covered by the most recent flush */
+    synchronized int lastBatch() { return lastBatch; }
+
+    /** @return number of physical flushes performed */
+    synchronized long flushes() { return flushes; }
+
+    /** @return number of save requests covered by all flushes */
+    synchronized long saves() { return saves; }
+}
@@ -0,0 +1,415 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of single-record changes made to the database.
+ *
+ * <p>Each line of the journal file is one small JSON entry describing a
+ * change to one record of one collection, preceded by the CRC32C of the
+ * entry's UTF-8 bytes as 8 hex digits and a space:</p>
+ * <ul>
+ *     <li>{@code {"op":"put","collection":"books","record":{...}}} – insert or replace</li>
+ *     <li>{@code {"op":"delete","collection":"users","key":"sara"}} – remove</li>
+ * </ul>
+ *
+ * <p>Records are matched by their key field ({@link #keyField(String)}).
+ * Replaying the journal on top of the last snapshot rebuilds the current
+ * database state, so a mutation only costs one appended line instead of
+ * a rewrite of the whole file.</p>
+ *
+ * <p>Reading stops at the first line that is incomplete or whose checksum
+ * does not match, so a crash in the middle of an append loses only that
+ * append; {@link #recover()} then cuts the damaged tail off. Lines without
+ * a checksum, written by earlier versions, are still accepted.</p>
+ *
+ * <p>Entries also carry the database {@code "version"} their change
+ * produced, so the newest version is known without a snapshot rewrite.</p>
+ */
+final class Journal {
+
+    private static final Map<String, String> KEY_FIELDS = Map.of(
+            "books", "isbn",
+            "cds", "id",
+            "users", "username"
+    );
+
+    /** Hex digits of the CRC32C that starts every line. */
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path path;
+
+    Journal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the field that identifies a record inside a collection.
+     *
+     * @param collection collection name ("books", "cds", "users", ...)
+     * @return the key field, or {@code null} if the collection cannot be journaled
+     */
+    static String keyField(String collection) {
+        return KEY_FIELDS.get(collection);
+    }
+
+    /**
+     * Builds an entry that inserts or replaces a record.
+     *
+     * @param collection collection the record belongs to
+     * @param record     the full record
+     * @return the journal entry
+     */
+    static JSONObject put(String collection, JSONObject record) {
+        JSONObject entry = new JSONObject();
+        entry.put("op", "put");
+        entry.put("collection", collection);
+        entry.put("record", record);
+        return entry;
+    }
+
+    /**
+     * Builds an entry that removes a record.
+     *
+     * @param collection collection the record belongs to
+     * @param key        value of the record's key field
+     * @return the journal entry
+     */
+    static JSONObject delete(String collection, String key) {
+        JSONObject entry = new JSONObject();
+        entry.put("op", "delete");
+        entry.put("collection", collection);
+        entry.put("key", key);
+        return entry;
+    }
+
+    /**
+     * @return the journal file location
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Appends entries to the end of the journal file, each on its own
+     * checksummed line, in a single write. The entries are on disk, not
+     * just in the operating system's cache, when this returns.
+     *
+     * @param entries entries to write, in order
+     * @throws IOException if the file cannot be written
+     */
+    void append(List<JSONObject> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (JSONObject entry : entries) {
+            byte[] json = entry.toString().getBytes(StandardCharsets.UTF_8);
+            CRC32C crc = new CRC32C();
+            crc.update(json);
+
+            out.write(String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+            out.write(json);
+            out.write('\n');
+        }
+        boolean created = !Files.exists(path);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        if (created) AtomicFile.syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Applies every entry of the journal to the given database.
+     *
+     * <p>Replay stops at the first entry that is incomplete or fails its
+     * checksum, which is what a write interrupted half-way leaves behind.</p>
+     *
+     * @param db snapshot to bring up to date
+     * @return number of entries applied
+     * @throws IOException if the file cannot be read
+     */
+    int replay(JSONObject db) throws IOException {
+        return replay(db, null);
+    }
+
+    /**
+     * Applies the entries of one collection to the given database.
+     *
+     * @param db         snapshot to bring up to date
+     * @param collection collection to replay, or {@code null} for all of them
+     * @return number of entries applied
+     * @throws IOException if the file cannot be read
+     */
+    int replay(JSONObject db, String collection) throws IOException {
+        Map<String, Map<String, Integer>> positions = new HashMap<>();
+        int[] applied = new int[1];
+
+        forEachEntry(entry -> {
+            if (collection == null || collection.equals(entry.optString("collection"))) {
+                apply(db, entry, positions);
+                applied[0]++;
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * Counts the complete entries in the journal.
+     *
+     * @return number of entries up to the first damaged one
+     * @throws IOException if the file cannot be read
+     */
+    int count() throws IOException {
+        return scan().entries();
+    }
+
+    /**
+     * Returns the highest database version recorded by the journal.
+     *
+     * @return the version, or 0 if no valid entry carries one
+     * @throws IOException if the file cannot be read
+     */
+    long lastVersion() throws IOException {
+        return scan().lastVersion();
+    }
+
+    /**
+     * Reads the whole journal once and reports what it holds.
+     *
+     * @return entry count, last version and where the valid entries end
+     * @throws IOException if the file cannot be read
+     */
+    Scan scan() throws IOException {
+        int[] entries = new int[1];
+        long[] version = new long[1];
+
+        long valid = forEachEntry(entry -> {
+            entries[0]++;
+            version[0] = Math.max(version[0], entry.optLong("version", 0));
+        });
+        return new Scan(entries[0], version[0], valid, size());
+    }
+
+    /**
+     * Cuts off whatever follows the last valid entry: the torn tail of an
+     * interrupted append, or everything from the first entry whose checksum
+     * does not match. Entries appended afterwards would otherwise sit
+     * behind the damage, where replay never reaches them.
+     *
+     * @return number of bytes removed
+     * @throws IOException if the file cannot be read or truncated
+     */
+    long recover() throws IOException {
+        long valid = forEachEntry(entry -> { });
+
+        if (!Files.exists(path)) return 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (valid >= size) return 0;
+
+            channel.truncate(valid);
+            channel.force(true);
+            return size - valid;
+        }
+    }
+
+    /**
+     * What {@link #scan()} found.
+     *
+     * @param entries     number of valid entries
+     * @param lastVersion highest version they carry
+     * @param validBytes  length of the valid part of the file
+     * @param size        length of the file
+     */
+    record Scan(int entries, long lastVersion, long validBytes, long size) {
+
+        /**
+         * @return {@code true} if something follows the last valid entry
+         */
+        boolean damaged() {
+            return validBytes < size;
+        }
+    }
+
+    /**
+     * @return the journal's length in bytes, 0 if it does not exist
+     * @throws IOException if the file cannot be inspected
+     */
+    long size() throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * Removes the first {@code bytes} bytes of the journal, keeping the
+     * entries appended after that point. Used after a snapshot that
+     * contains those first entries has been written.
+     *
+     * @param bytes length of the part now covered by a snapshot
+     * @throws IOException if the journal cannot be rewritten
+     */
+    void dropPrefix(long bytes) throws IOException {
+        if (!Files.exists(path)) return;
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (bytes >= size) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            AtomicFile.write(path, out -> {
+                long position = bytes;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            });
+        }
+    }
+
+    /**
+     * Empties the journal, typically right after a full snapshot was written.
+     *
+     * @throws IOException if the file cannot be removed
+     */
+    void truncate() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    // ===== Reading =====
+
+    /**
+     * Hands every valid entry to {@code action}, in order, stopping at the
+     * first one that is incomplete or damaged.
+     *
+     * @return length in bytes of the valid part of the file
+     */
+    private long forEachEntry(Consumer<JSONObject> action) throws IOException {
+        if (!Files.exists(path)) return 0;
+
+        long valid = 0;
+        long offset = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] != '\n') continue;
+
+                    line.write(buffer, start, i - start);
+                    start = i + 1;
+
+                    byte[] bytes = line.toByteArray();
+                    line.reset();
+                    if (!isBlank(bytes)) {
+                        JSONObject entry = decode(bytes);
+                        if (entry == null) return valid;
+                        action.accept(entry);
+                    }
+                    valid = offset + start;
+                }
+                line.write(buffer, start, n - start);
+                offset += n;
+            }
+        }
+        // a last line without its newline was cut short
+        return valid;
+    }
+
+    /**
+     * Parses one line, without its newline.
+     *
+     * @return the entry, or {@code null} if the line is damaged
+     */
+    private static JSONObject decode(byte[] line) {
+        try {
+            if (line[0] == '{') {
+                // written before entries carried a checksum
+                return new JSONObject(new String(line, StandardCharsets.UTF_8));
+            }
+            if (line.length <= CHECKSUM_LENGTH || line[CHECKSUM_LENGTH] != ' ') return null;
+
+            long expected = Long.parseLong(new String(line, 0, CHECKSUM_LENGTH, StandardCharsets.US_ASCII), 16);
+            CRC32C crc = new CRC32C();
+            crc.update(line, CHECKSUM_LENGTH + 1, line.length - CHECKSUM_LENGTH - 1);
+            if (crc.getValue() != expected) return null;
+
+            return new JSONObject(new String(line, CHECKSUM_LENGTH + 1,
+                    line.length - CHECKSUM_LENGTH - 1, StandardCharsets.UTF_8));
+        } catch (NumberFormatException | JSONException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBlank(byte[] line) {
+        for (byte b : line) {
+            if (b != ' ' && b != '\t' && b != '\r') return false;
+        }
+        return true;
+    }
+
+    // ===== Replay =====
+
+    private static void apply(JSONObject db, JSONObject entry,
+                              Map<String, Map<String, Integer>> positions) {
+
+        String collection = entry.getString("collection");
+        String keyField = keyField(collection);
+        if (keyField == null) return;
+
+        if (!db.has(collection)) db.put(collection, new JSONArray());
+        JSONArray records = db.getJSONArray(collection);
+        Map<String, Integer> index = positions.computeIfAbsent(collection, c -> indexOf(records, keyField));
+
+        if (entry.getString("op").equals("put")) {
+            JSONObject record = entry.getJSONObject("record");
+            String key = record.optString(keyField, null);
+            Integer pos = index.get(key);
+
+            if (pos != null) {
+                records.put(pos, record);
+            } else {
+                index.put(key, records.length());
+                records.put(record);
+            }
+        } else {
+            Integer pos = index.remove(entry.getString("key"));
+            if (pos != null) {
+                records.remove(pos);
+                positions.put(collection, indexOf(records, keyField));
+            }
+        }
+    }
+
+    private static Map<String, Integer> indexOf(JSONArray records, String keyField) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject r = records.optJSONObject(i);
+            // the first record with a key wins, as in RecordIndex
+            if (r != null) index.putIfAbsent(r.optString(keyField, null), i);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,306 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming JSON reader used to load database files.
+ *
+ * <p>The file is decoded through a small fixed buffer and parsed token by
+ * token, so records are built directly from the bytes on disk. Unlike
+ * {@code new JSONArray(Files.readString(path))} the whole text never has to
+ * be held in memory next to the parsed tree: peak memory while loading is
+ * the size of the records themselves plus one buffer.</p>
+ *
+ * <p>Values are the same types {@link JSONObject} produces: nested
+ * {@link JSONObject}s and {@link JSONArray}s, strings, booleans,
+ * {@link JSONObject#NULL} and numbers as parsed by
+ * {@link JSONObject#stringToValue(String)}.</p>
+ */
+final class JsonReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long offset;
+
+    /** Reusable builder for strings and number literals. */
+    private final StringBuilder text = new StringBuilder();
+
+    JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Opens a UTF-8 file for reading. A GZIP-compressed file, as written in
+     * compressed mode, is recognized by its first bytes and decompressed
+     * while it is read.
+     *
+     * @param path file to read
+     * @return a reader positioned at the start of the file
+     */
+    static JsonReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (isCompressed(channel)) {
+                InputStream in = new GZIPInputStream(Channels.newInputStream(channel), GZIP_BUFFER_SIZE);
+                return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            return new JsonReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean isCompressed(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            // a file may deliver its first bytes in more than one read
+        }
+        channel.position(0);
+        return magic.position() == 2 && magic.get(0) == (byte) 0x1f && magic.get(1) == (byte) 0x8b;
+    }
+
+    /**
+     * Reads a file holding a single JSON object.
+     */
+    static JSONObject readObject(Path path) throws IOException {
+        try (JsonReader reader = open(path)) {
+            JSONObject object = reader.nextObject();
+            reader.expectEnd();
+            return object;
+        }
+    }
+
+    /**
+     * Reads a file holding a single JSON array.
+     */
+    static JSONArray readArray(Path path) throws IOException {
+        JSONArray array = new JSONArray();
+        try (JsonReader reader = open(path)) {
+            reader.forEachElement(array::put);
+            reader.expectEnd();
+        }
+        return array;
+    }
+
+    /**
+     * Reads a top-level array and hands each element to {@code action} as
+     * soon as it has been parsed.
+     *
+     * @param action receives every element in order
+     */
+    void forEachElement(Consumer<Object> action) throws IOException {
+        expect('[');
+        if (peekToken() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            action.accept(nextValue());
+            char c = nextToken();
+            if (c == ']') return;
+            if (c != ',') throw syntaxError("Expected ',' or ']'");
+        }
+    }
+
+    /**
+     * Reads the next value, which must be an object.
+     */
+    JSONObject nextObject() throws IOException {
+        if (peekToken() != '{') throw syntaxError("Expected '{'");
+        return (JSONObject) nextValue();
+    }
+
+    /**
+     * Reads the next complete value.
+     */
+    Object nextValue() throws IOException {
+        char c = nextToken();
+        switch (c) {
+            case '{':
+                return readObjectBody();
+            case '[':
+                return readArrayBody();
+            case '"':
+                return readString();
+            case 0:
+                throw syntaxError("Unexpected end of input");
+            default:
+                pos--;
+                return readLiteral();
+        }
+    }
+
+    /**
+     * Fails unless only whitespace remains.
+     */
+    void expectEnd() throws IOException {
+        if (peekToken() != 0) throw syntaxError("Unexpected content after value");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // ===== Values =====
+
+    private JSONObject readObjectBody() throws IOException {
+        JSONObject object = new JSONObject();
+        if (peekToken() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            if (nextToken() != '"') throw syntaxError("Expected a key");
+            String key = readString();
+            expect(':');
+            object.put(key, nextValue());
+
+            char c = nextToken();
+            if (c == '}') return object;
+            if (c != ',') throw syntaxError("Expected ',' or '}'");
+        }
+    }
+
+    private JSONArray readArrayBody() throws IOException {
+        JSONArray array = new JSONArray();
+        if (peekToken() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.put(nextValue());
+
+            char c = nextToken();
+            if (c == ']') return array;
+            if (c != ',') throw syntaxError("Expected ',' or ']'");
+        }
+    }
+
+    /** Reads a string whose opening quote has been consumed. */
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) throw syntaxError("Unterminated string");
+
+            // copy the run of plain characters in one go
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\') break;
+                pos++;
+            }
+            text.append(buffer, start, pos - start);
+            if (pos == limit) continue;
+
+            char c = buffer[pos++];
+            if (c == '"') return text.toString();
+            text.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = next();
+        switch (c) {
+            case 'b': return '\b';
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'f': return '\f';
+            case 'r': return '\r';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) throw syntaxError("Illegal escape");
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    /** Reads a number, {@code true}, {@code false} or {@code null}. */
+    private Object readLiteral() throws IOException {
+        text.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == ',' || c == ']' || c == '}' || c == ':' || Character.isWhitespace(c)) break;
+            text.append(c);
+            pos++;
+        }
+        if (text.length() == 0) throw syntaxError("Missing value");
+
+        String literal = text.toString();
+        Object value = JSONObject.stringToValue(literal);
+        if (value instanceof String) throw syntaxError("Unexpected token '" + literal + "'");
+        return value;
+    }
+
+    // ===== Tokens =====
+
+    private void expect(char expected) throws IOException {
+        if (nextToken() != expected) throw syntaxError("Expected '" + expected + "'");
+    }
+
+    /** Returns the next non-whitespace character, or 0 at end of input. */
+    private char nextToken() throws IOException {
+        char c = peekToken();
+        if (c != 0) pos++;
+        return c;
+    }
+
+    private char peekToken() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (!Character.isWhitespace(c)) return c;
+            pos++;
+        }
+        return 0;
+    }
+
+    private char next() throws IOException {
+        if (pos == limit && !fill()) throw syntaxError("Unexpected end of input");
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (offset + pos));
+    }
+}
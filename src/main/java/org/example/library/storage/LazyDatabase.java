@@ -0,0 +1,287 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Database object whose collections are read from disk on first access.
+ *
+ * <p>It behaves like the {@link JSONObject} returned by earlier versions of
+ * {@link FileDatabase#load()}: {@code getJSONArray("users")} still returns
+ * the users collection. The difference is that a collection's segment is
+ * only read and parsed the first time something asks for it, so logging in
+ * never pays for parsing the book catalog.</p>
+ *
+ * <p>Methods that walk every key, such as {@code toString()}, only see the
+ * collections that have been loaded so far; call {@link #loadAll()} first
+ * when the whole database is needed.</p>
+ *
+ * <p>It also keeps the typed models {@link RecordCodec} decoded from each
+ * collection, until {@link #invalidate(String)} reports that the collection
+ * changed, and the {@link RecordIndex} and {@link TextIndex} lookups
+ * build over its collections.</p>
+ *
+ * <p>{@link #copyOnWrite()} derives the private version a transaction
+ * works on; see {@link CopyOnWriteRecords}.</p>
+ */
+final class LazyDatabase extends JSONObject {
+
+    private final Set<String> notLoaded;
+    private final Function<String, JSONArray> loader;
+    private final Object lock;
+
+    private final Map<String, List<?>> decoded = new HashMap<>();
+    private long modifications;
+
+    /** Key and text indexes, shared by every version derived from this one. */
+    private Map<String, Object> indexes = new ConcurrentHashMap<>();
+
+    /** Committed version this transaction's version was derived from. */
+    private LazyDatabase committed;
+
+    /**
+     * @param fields      database-level fields (the contents of library.json)
+     * @param collections collections to load on demand
+     * @param loader      reads one collection from disk
+     * @param lock        monitor held while a collection is being loaded
+     */
+    LazyDatabase(JSONObject fields, Collection<String> collections,
+                 Function<String, JSONArray> loader, Object lock) {
+        super();
+        this.notLoaded = ConcurrentHashMap.newKeySet();
+        this.loader = loader;
+        this.lock = lock;
+
+        for (String key : fields.keySet()) {
+            super.put(key, fields.opt(key));
+        }
+        for (String name : collections) {
+            if (!super.has(name)) notLoaded.add(name);
+        }
+    }
+
+    @Override
+    public Object opt(String key) {
+        if (key != null && notLoaded.contains(key)) {
+            synchronized (lock) {
+                if (notLoaded.contains(key)) {
+                    super.put(key, committed != null
+                            ? new CopyOnWriteRecords(committed.getJSONArray(key))
+                            : loader.apply(key));
+                    notLoaded.remove(key);
+                }
+            }
+        }
+        return super.opt(key);
+    }
+
+    @Override
+    public boolean has(String key) {
+        return notLoaded.contains(key) || super.has(key);
+    }
+
+    @Override
+    public JSONObject put(String key, Object value) {
+        if (notLoaded != null) {
+            notLoaded.remove(key);
+            invalidate(key);
+        }
+        return super.put(key, value);
+    }
+
+    @Override
+    public Object remove(String key) {
+        notLoaded.remove(key);
+        invalidate(key);
+        return super.remove(key);
+    }
+
+    /**
+     * Derives a new version of this database for a transaction to modify.
+     *
+     * <p>Collections are shared with this version until the transaction
+     * touches their records, which are then copied one at a time; this
+     * version and its readers never see the transaction's changes. A
+     * collection this version has not loaded yet is loaded into it first,
+     * so both versions start from the same records. Decoded models are
+     * carried over and indexes are shared.</p>
+     *
+     * @return the transaction's version
+     */
+    LazyDatabase copyOnWrite() {
+        synchronized (lock) {
+            LazyDatabase copy = new LazyDatabase(new JSONObject(), List.of(), loader, lock);
+            for (String key : keySet()) {
+                Object value = super.opt(key);
+                copy.putCopy(key, value instanceof JSONArray records
+                        ? new CopyOnWriteRecords(records)
+                        : CopyOnWriteRecords.copy(value));
+            }
+            copy.notLoaded.addAll(notLoaded);
+            copy.committed = notLoaded.isEmpty() ? null : this;
+
+            synchronized (decoded) {
+                copy.decoded.putAll(decoded);
+            }
+            copy.indexes = indexes;
+            return copy;
+        }
+    }
+
+    /**
+     * Marks this version as committed. Its collections stop copying records
+     * on access, and it no longer refers to the version it was derived from.
+     */
+    void freeze() {
+        synchronized (lock) {
+            for (String key : keySet()) {
+                if (super.opt(key) instanceof CopyOnWriteRecords records) {
+                    records.freeze();
+                }
+            }
+            // collections it never loaded were not changed, so they can be
+            // read from disk like those of any other version
+            committed = null;
+        }
+    }
+
+    /**
+     * Returns the models decoded from a collection, decoding it only if it
+     * changed since the last call.
+     *
+     * @param collection collection name
+     * @param decoder    builds the models from the collection's records
+     * @return the cached or freshly decoded models
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> decoded(String collection, Function<JSONArray, List<T>> decoder) {
+        long seen;
+        synchronized (decoded) {
+            List<?> models = decoded.get(collection);
+            if (models != null) return (List<T>) models;
+            seen = modifications;
+        }
+
+        List<T> models = decoder.apply(getJSONArray(collection));
+
+        synchronized (decoded) {
+            // a save that raced with decoding may have made these models stale
+            if (modifications == seen) decoded.put(collection, models);
+        }
+        return models;
+    }
+
+    /**
+     * Drops the decoded models of a collection after its records changed.
+     *
+     * @param collection collection name
+     */
+    void invalidate(String collection) {
+        synchronized (decoded) {
+            modifications++;
+            decoded.remove(collection);
+        }
+    }
+
+    /**
+     * @param name   name of the index, unique per kind and collection
+     * @param create creates the index empty on first use
+     * @return the index
+     */
+    @SuppressWarnings("unchecked")
+    <T> T index(String name, Supplier<T> create) {
+        return (T) indexes.computeIfAbsent(name, n -> create.get());
+    }
+
+    /**
+     * Tells the indexes of a collection about records that were saved, so
+     * that those indexing fields changed in place can index them again; see
+     * {@link CollectionIndex#reindex}. Records that are not indexed yet are
+     * left for the next lookup.
+     *
+     * @param collection collection name
+     * @param records    the saved records
+     */
+    void reindex(String collection, List<JSONObject> records) {
+        String keyField = Journal.keyField(collection);
+        if (keyField == null) return;
+
+        List<CollectionIndex> affected = new ArrayList<>();
+        for (Map.Entry<String, Object> index : indexes.entrySet()) {
+            String name = index.getKey();
+            if (!name.startsWith("key:") && name.startsWith(collection + ".", name.indexOf(':') + 1)) {
+                affected.add((CollectionIndex) index.getValue());
+            }
+        }
+        if (affected.isEmpty()) return;
+
+        JSONArray array = getJSONArray(collection);
+        for (JSONObject record : records) {
+            int position = RecordIndex.position(this, collection, record.optString(keyField, null));
+            if (position < 0) continue;
+
+            for (CollectionIndex index : affected) {
+                index.reindex(array, position);
+            }
+        }
+    }
+
+    /**
+     * @param collection collection name
+     * @return {@code true} if the collection has been read into memory
+     */
+    boolean isLoaded(String collection) {
+        return !notLoaded.contains(collection) && super.has(collection);
+    }
+
+    /**
+     * Derives a version that reads some collections again on first access,
+     * after their files changed on disk, and shares every other collection,
+     * its decoded models and the indexes with this one. This version is not
+     * changed, so its readers keep seeing the collections they read.
+     *
+     * @param collections names of the collections to read again
+     * @return the new version
+     */
+    LazyDatabase reloading(Collection<String> collections) {
+        synchronized (lock) {
+            LazyDatabase copy = new LazyDatabase(new JSONObject(), List.of(), loader, lock);
+            for (String key : keySet()) {
+                if (!collections.contains(key)) copy.putCopy(key, super.opt(key));
+            }
+            copy.notLoaded.addAll(notLoaded);
+            copy.notLoaded.addAll(collections);
+            copy.committed = committed;
+
+            synchronized (decoded) {
+                copy.decoded.putAll(decoded);
+                copy.decoded.keySet().removeAll(collections);
+            }
+            copy.indexes = indexes;
+            return copy;
+        }
+    }
+
+    private void putCopy(String key, Object value) {
+        super.put(key, value);
+    }
+
+    /**
+     * Reads every collection that has not been accessed yet.
+     */
+    void loadAll() {
+        for (String name : Set.copyOf(notLoaded)) {
+            opt(name);
+        }
+    }
+}
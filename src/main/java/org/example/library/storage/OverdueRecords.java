@@ -0,0 +1,77 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Finds the borrowed books and CDs that are past their due date, for the
+ * overdue checks that fine them.
+ *
+ * <p>A check scans the committed version with {@link #latePositions}, which
+ * reads records without copying them, and then fines the late records in a
+ * transaction, fetching each with {@link #lateRecord} so that only those
+ * are copied into the transaction's version.</p>
+ */
+public final class OverdueRecords {
+
+    private OverdueRecords() {
+    }
+
+    /**
+     * Finds the late records of a collection.
+     *
+     * @param db         the loaded database
+     * @param collection "books" or "cds"
+     * @param today      epoch day to compare due dates with
+     * @return positions of the late records, in stored order, mapped to
+     *         their keys ({@code null} for a record without one)
+     */
+    public static Map<Integer, String> latePositions(JSONObject db, String collection, long today) {
+        String keyField = CollectionIndex.keyField(collection);
+        JSONArray records = db.getJSONArray(collection);
+
+        Map<Integer, String> late = new LinkedHashMap<>();
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record != null && daysLate(record, today) > 0) late.put(i, record.optString(keyField, null));
+        }
+        return late;
+    }
+
+    /**
+     * Fetches a record found by {@link #latePositions} from another version
+     * of the database, such as a transaction's. A commit since the scan may
+     * have moved it, in which case it is looked up by its key.
+     *
+     * @param db         the version to fetch from
+     * @param collection "books" or "cds"
+     * @param position   where the scan found the record
+     * @param key        the record's key, as returned by the scan
+     * @return the record, or {@code null} if it no longer exists; it may no
+     *         longer be late
+     */
+    public static JSONObject lateRecord(JSONObject db, String collection, int position, String key) {
+        String keyField = CollectionIndex.keyField(collection);
+
+        JSONObject record = db.getJSONArray(collection).optJSONObject(position);
+        if (record != null && Objects.equals(key, record.optString(keyField, null))) return record;
+        return key == null ? null : RecordIndex.find(db, collection, key);
+    }
+
+    /**
+     * @param record book or CD record
+     * @param today  epoch day to compare the due date with
+     * @return days the record is past its due date; 0 or less if it is not
+     *         borrowed, has no due date or is not late
+     */
+    public static long daysLate(JSONObject record, long today) {
+        if (!record.optBoolean("borrowed", false)) return 0;
+
+        long due = RecordCodec.dueDay(record, Long.MIN_VALUE);
+        return due == Long.MIN_VALUE ? 0 : today - due;
+    }
+}
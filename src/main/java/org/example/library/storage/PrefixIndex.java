@@ -0,0 +1,219 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted map of the distinct values of one text field of a collection,
+ * for completing what a user has typed so far.
+ *
+ * <p>Values are compared normalized: lowercased, with runs of whitespace
+ * turned into one space and none at either end, so {@code "Clean  Code"}
+ * and {@code "clean code "} are one value. Each value is kept once, with
+ * the positions of the records that have it, and completes to the text of
+ * the first of them. The values starting with a prefix are next to each
+ * other in the map, so a lookup costs {@code O(log n + k)} for {@code k}
+ * completions however large the catalog is, and adding a record costs
+ * {@code O(log n)}.</p>
+ *
+ * <p>The index lives on the database returned by {@link FileDatabase#load()}
+ * and keeps itself current on lookup as described in
+ * {@link CollectionIndex}. A record whose text was changed in place and
+ * saved is added under its new value right away, and a value is completed
+ * only if one of its records still has it, so a renamed title completes to
+ * its new text and no longer to the old. The old entry is kept while the
+ * save belongs to a transaction that has not committed; the first lookup
+ * on a committed version that finds the record changed drops it, together
+ * with the value once no record is left for it. Completing on a database
+ * that {@code load()} did not return checks every record.</p>
+ */
+public final class PrefixIndex extends CollectionIndex {
+
+    private final String field;
+    private final TreeMap<String, int[]> values = new TreeMap<>();
+    private String[] indexedValues = new String[0];
+
+    private PrefixIndex(String field, String keyField) {
+        super(keyField);
+        this.field = field;
+    }
+
+    /**
+     * Completes a prefix to the values of a field, in alphabetical order.
+     *
+     * @param db         the loaded database
+     * @param collection "books", "cds" or "users"
+     * @param field      text field to complete, such as "title"
+     * @param prefix     what has been typed so far, in any case; an empty
+     *                   prefix completes to the first values
+     * @param limit      most completions to return
+     * @return up to {@code limit} distinct values starting with the prefix,
+     *         as written in the catalog
+     * @throws IllegalArgumentException if the collection has no key field
+     *                                  or {@code limit} is not positive
+     */
+    public static List<String> complete(JSONObject db, String collection, String field,
+                                        String prefix, int limit) {
+        String keyField = keyField(collection);
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be positive: " + limit);
+
+        JSONArray records = db.optJSONArray(collection);
+        if (records == null) return List.of();
+        String wanted = normalizePrefix(prefix);
+
+        if (db instanceof LazyDatabase lazy) {
+            PrefixIndex index = lazy.index("prefix:" + collection + "." + field,
+                    () -> new PrefixIndex(field, keyField));
+            return index.completionsOf(records, wanted, limit);
+        }
+
+        TreeMap<String, String> matches = new TreeMap<>();
+        for (int i = 0; i < records.length(); i++) {
+            String label = label(records, i, field);
+            if (label == null) continue;
+
+            String key = normalize(label);
+            if (key.startsWith(wanted)) matches.putIfAbsent(key, label);
+        }
+        return matches.values().stream().limit(limit).toList();
+    }
+
+    /**
+     * @param text text to normalize
+     * @return the text lowercased, with single spaces between words and
+     *         none at either end
+     */
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    /** Like {@link #normalize}, but a space typed after the last word is kept. */
+    private static String normalizePrefix(String prefix) {
+        if (prefix == null) return "";
+
+        String normalized = normalize(prefix);
+        boolean endsWithSpace = !prefix.isEmpty() && Character.isWhitespace(prefix.charAt(prefix.length() - 1));
+        return endsWithSpace && !normalized.isEmpty() ? normalized + " " : normalized;
+    }
+
+    private static String label(JSONArray records, int position, String field) {
+        JSONObject record = records.optJSONObject(position);
+        String text = record == null ? null : record.optString(field, null);
+        return text == null || text.isBlank() ? null : text.trim();
+    }
+
+    // ===== Lookup =====
+
+    private synchronized List<String> completionsOf(JSONArray records, String prefix, int limit) {
+        update(records);
+
+        boolean committed = !(records instanceof CopyOnWriteRecords copy) || copy.isFrozen();
+        List<String> completions = new ArrayList<>(Math.min(limit, 16));
+        Iterator<Map.Entry<String, int[]>> entries = values.tailMap(prefix, true).entrySet().iterator();
+        while (entries.hasNext() && completions.size() < limit) {
+            Map.Entry<String, int[]> entry = entries.next();
+            if (!entry.getKey().startsWith(prefix)) break;
+
+            String label = labelOf(records, entry, committed);
+            if (label != null) {
+                completions.add(label);
+            } else if (entry.getValue().length == 0) {
+                entries.remove();
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Text of the first record that still has the entry's value, or
+     * {@code null} if none does. When {@code records} are committed,
+     * positions whose record was saved under another value since are
+     * dropped from the entry on the way.
+     */
+    private String labelOf(JSONArray records, Map.Entry<String, int[]> entry, boolean committed) {
+        String key = entry.getKey();
+        int[] positions = entry.getValue();
+        String found = null;
+        for (int position : entry.getValue()) {
+            String label = label(records, position, field);
+            if (label != null && normalize(label).equals(key)) {
+                found = label;
+                break;
+            }
+            if (committed && !key.equals(valueAt(position))) positions = withoutPosition(positions, position);
+        }
+        entry.setValue(positions);
+        return found;
+    }
+
+    /**
+     * @return number of distinct values held, including any not yet found
+     *         to have no record left
+     */
+    synchronized int size() {
+        return values.size();
+    }
+
+    private String valueAt(int position) {
+        return position < indexedValues.length ? indexedValues[position] : null;
+    }
+
+    @Override
+    synchronized void reindex(JSONArray records, int position) {
+        if (isIndexed(position)) add(records, position, position + 1);
+    }
+
+    @Override
+    void clear() {
+        values.clear();
+        indexedValues = new String[0];
+    }
+
+    @Override
+    void add(JSONArray records, int from, int to) {
+        if (to > indexedValues.length) {
+            indexedValues = Arrays.copyOf(indexedValues, Math.max(to, indexedValues.length * 2));
+        }
+        for (int i = from; i < to; i++) {
+            String label = label(records, i, field);
+            String key = label == null ? null : normalize(label);
+            indexedValues[i] = key;
+            if (key == null) continue;
+
+            int position = i;
+            values.merge(key, new int[]{i}, (positions, added) -> withPosition(positions, position));
+        }
+    }
+
+    /** Adds a position to an ascending array of them, unless it is there already. */
+    private static int[] withPosition(int[] positions, int position) {
+        int at = Arrays.binarySearch(positions, position);
+        if (at >= 0) return positions;
+
+        at = -at - 1;
+        int[] added = new int[positions.length + 1];
+        System.arraycopy(positions, 0, added, 0, at);
+        added[at] = position;
+        System.arraycopy(positions, at, added, at + 1, positions.length - at);
+        return added;
+    }
+
+    /** Removes a position from an ascending array of them. */
+    private static int[] withoutPosition(int[] positions, int position) {
+        int at = Arrays.binarySearch(positions, position);
+        if (at < 0) return positions;
+
+        int[] removed = new int[positions.length - 1];
+        System.arraycopy(positions, 0, removed, 0, at);
+        System.arraycopy(positions, at + 1, removed, at, removed.length - at);
+        return removed;
+    }
+}
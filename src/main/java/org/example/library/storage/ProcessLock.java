@@ -0,0 +1,83 @@
+package org.example.library.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock shared by every process that uses the same database.
+ *
+ * <p>The lock is an OS file lock on a small lock file next to the database.
+ * File locks are held on behalf of the whole JVM, so threads of one process
+ * are serialized by a local lock first; the file lock is taken by the
+ * outermost {@link #acquire(Path)} and released by the matching
+ * {@link #release()}. A thread that already holds the lock may acquire it
+ * again.</p>
+ */
+final class ProcessLock {
+
+    private final ReentrantLock local = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock lock;
+
+    /**
+     * Blocks until this thread holds the lock.
+     *
+     * @param path lock file, created if missing
+     * @throws IOException if the lock file cannot be opened or locked
+     */
+    void acquire(Path path) throws IOException {
+        local.lock();
+        if (local.getHoldCount() > 1) return;
+
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = channel.lock();
+        } catch (IOException | RuntimeException e) {
+            closeChannel();
+            local.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases one hold; the file lock is released with the last one.
+     */
+    void release() {
+        try {
+            if (local.getHoldCount() == 1) {
+                try {
+                    lock.release();
+                } catch (IOException ignored) {
+                    // closing the channel releases it as well
+                } finally {
+                    lock = null;
+                    closeChannel();
+                }
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if the current thread holds the lock
+     */
+    boolean isHeldByCurrentThread() {
+        return local.isHeldByCurrentThread();
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        } finally {
+            channel = null;
+        }
+    }
+}
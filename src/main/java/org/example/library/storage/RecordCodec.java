@@ -0,0 +1,184 @@
+package org.example.library.storage;
+
+import org.example.library.models.Book;
+import org.example.library.models.CD;
+import org.example.library.models.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Converts stored records to and from the typed models used by the services.
+ *
+ * <p>All mapping between database fields and {@link Book}, {@link CD} and
+ * {@link User} lives here, so that services no longer pick fields out of
+ * {@link JSONObject}s themselves.</p>
+ *
+ * <p>Due dates are stored as epoch days (days since 1970-01-01), so they
+ * are compared as numbers and never parsed.</p>
+ *
+ * <p>The list methods ({@link #books(JSONObject)}, {@link #cds(JSONObject)},
+ * {@link #users(JSONObject)}) decode a collection once and keep the result
+ * on the database returned by {@link FileDatabase#load()} until that
+ * collection is saved or reloaded. Repeated queries therefore reuse the same
+ * model objects instead of rebuilding them from the record maps every time.
+ * The returned lists and models are shared and must be treated as
+ * read-only.</p>
+ */
+public final class RecordCodec {
+
+    private RecordCodec() {
+    }
+
+    // ===== Books =====
+
+    /**
+     * @param db the loaded database
+     * @return every book as a model, in stored order
+     */
+    public static List<Book> books(JSONObject db) {
+        return decodeAll(db, "books", RecordCodec::toBook);
+    }
+
+    /**
+     * @param record stored book record
+     * @return the book model
+     */
+    public static Book toBook(JSONObject record) {
+        Book book = new Book(
+                record.getString("title"),
+                record.getString("author"),
+                record.getString("isbn"),
+                record.getInt("quantity"),
+                record.getBoolean("available"),
+                record.optBoolean("borrowed", false),
+                null,
+                record.optDouble("fine", 0)
+        );
+        book.setDueDay(dueDay(record, Book.NO_DUE_DATE));
+        return book;
+    }
+
+    /**
+     * Builds the record stored for a newly added book.
+     *
+     * @param book the book model
+     * @return a new record
+     */
+    public static JSONObject fromBook(Book book) {
+        JSONObject b = new JSONObject();
+        b.put("title", book.getTitle());
+        b.put("author", book.getAuthor());
+        b.put("isbn", book.getIsbn());
+        b.put("quantity", book.getQuantity());
+        b.put("available", book.isAvailable());
+        return b;
+    }
+
+    // ===== CDs =====
+
+    /**
+     * @param db the loaded database
+     * @return every CD as a model, in stored order
+     */
+    public static List<CD> cds(JSONObject db) {
+        return decodeAll(db, "cds", RecordCodec::toCD);
+    }
+
+    /**
+     * @param record stored CD record
+     * @return the CD model
+     */
+    public static CD toCD(JSONObject record) {
+        CD cd = new CD(
+                record.getString("id"),
+                record.getString("title"),
+                record.getString("artist"),
+                record.getInt("quantity"),
+                record.getBoolean("available")
+        );
+        cd.setBorrowed(record.optBoolean("borrowed", false));
+        cd.setDueDay(dueDay(record, CD.NO_DUE_DATE));
+        cd.setFine(record.optDouble("fine", 0));
+        cd.setBorrowedBy(record.optInt("borrowedBy", -1));
+        return cd;
+    }
+
+    /**
+     * Builds the record stored for a newly added CD, which starts out
+     * not borrowed and without a fine.
+     *
+     * @param cd the CD model
+     * @return a new record
+     */
+    public static JSONObject fromCD(CD cd) {
+        JSONObject c = new JSONObject();
+        c.put("id", cd.getId());
+        c.put("title", cd.getTitle());
+        c.put("artist", cd.getArtist());
+        c.put("quantity", cd.getQuantity());
+        c.put("available", cd.isAvailable());
+        c.put("borrowed", false);
+        c.put("dueDate", JSONObject.NULL);
+        c.put("fine", 0);
+        c.put("borrowedBy", JSONObject.NULL);
+        return c;
+    }
+
+    // ===== Users =====
+
+    /**
+     * @param db the loaded database
+     * @return every user as a model, in stored order
+     */
+    public static List<User> users(JSONObject db) {
+        return decodeAll(db, "users", RecordCodec::toUser);
+    }
+
+    /**
+     * @param record stored user record; accounts created before ids and
+     *               emails were stored get id -1 and a placeholder email
+     * @return the user model
+     */
+    public static User toUser(JSONObject record) {
+        return new User(
+                record.optInt("id", -1),
+                record.getString("username"),
+                record.getString("password"),
+                record.getString("role"),
+                record.optString("email", "unknown@mail.com")
+        );
+    }
+
+    // ===== Helpers =====
+
+    private static <T> List<T> decodeAll(JSONObject db, String collection, Function<JSONObject, T> decoder) {
+        Function<JSONArray, List<T>> decodeArray = records -> {
+            List<T> models = new ArrayList<>(records.length());
+            for (int i = 0; i < records.length(); i++) {
+                models.add(decoder.apply(records.getJSONObject(i)));
+            }
+            return Collections.unmodifiableList(models);
+        };
+
+        if (db instanceof LazyDatabase lazy) {
+            return lazy.decoded(collection, decodeArray);
+        }
+        return decodeArray.apply(db.getJSONArray(collection));
+    }
+
+    /**
+     * Reads a stored due date.
+     *
+     * @param record book or CD record
+     * @param none   value for a record without a due date
+     * @return the due date as an epoch day
+     */
+    public static long dueDay(JSONObject record, long none) {
+        return record.optLong("dueDate", none);
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash index from a collection's key field to record positions, so that
+ * looking a record up by its key does not scan the collection.
+ *
+ * <p>Collections are keyed like in the journal: books by {@code "isbn"},
+ * CDs by {@code "id"} and users by {@code "username"}. The index is kept
+ * on the database returned by {@link FileDatabase#load()} and shared with
+ * the versions derived from it, and keeps itself current on lookup as
+ * described in {@link CollectionIndex}: new books and imports are picked
+ * up incrementally, while borrowing, quantity or fine updates need no work
+ * at all. Every hit is checked against the record it points to. A
+ * record's key is not expected to change in place.</p>
+ *
+ * <p>Only versions returned by {@link FileDatabase#load()} can hold an
+ * index. A database assembled by the caller, such as one built up in
+ * memory before it is handed to {@link FileDatabase#save}, has nowhere to
+ * keep one, so its collection is scanned.</p>
+ */
+public final class RecordIndex extends CollectionIndex {
+
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    private RecordIndex(String keyField) {
+        super(keyField);
+    }
+
+    /**
+     * Finds a record by its key.
+     *
+     * @param db         the loaded database
+     * @param collection "books", "cds" or "users"
+     * @param key        the ISBN, CD id or username
+     * @return the first record with that key, or {@code null} if there is none
+     * @throws IllegalArgumentException if the collection has no key field
+     */
+    public static JSONObject find(JSONObject db, String collection, String key) {
+        int position = position(db, collection, key);
+        return position < 0 ? null : db.getJSONArray(collection).getJSONObject(position);
+    }
+
+    /**
+     * Finds the position of a record by its key.
+     *
+     * @param db         the loaded database
+     * @param collection "books", "cds" or "users"
+     * @param key        the ISBN, CD id or username
+     * @return position of the first record with that key, or -1
+     * @throws IllegalArgumentException if the collection has no key field
+     */
+    public static int position(JSONObject db, String collection, String key) {
+        String keyField = keyField(collection);
+
+        JSONArray records = db.optJSONArray(collection);
+        if (records == null || key == null) return -1;
+
+        if (db instanceof LazyDatabase lazy) {
+            RecordIndex index = lazy.index("key:" + collection, () -> new RecordIndex(keyField));
+            return index.positionOf(records, key);
+        }
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record != null && key.equals(record.optString(keyField, null))) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks a key up in {@code records}, first bringing the index up to
+     * date with them.
+     */
+    private synchronized int positionOf(JSONArray records, String key) {
+        update(records);
+
+        Integer position = positions.get(key);
+        if (position == null) return -1;
+        if (key.equals(keyAt(records, position))) return position;
+
+        rebuild(records);
+        position = positions.get(key);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    void clear() {
+        positions.clear();
+    }
+
+    @Override
+    void add(JSONArray records, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String key = keyAt(records, i);
+            // the first record with a key wins, as with a scan
+            if (key != null) positions.putIfAbsent(key, i);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Upgrades stored data from older schema versions.
+ *
+ * <p>library.json records the {@code "schemaVersion"} its data follows.
+ * When {@link FileDatabase} reads a database with an older version, it
+ * runs the missing migrations in order, once, and saves the result with
+ * the current version; code reading records can then rely on the current
+ * format instead of repairing old records every time it reads them.</p>
+ *
+ * <p>To change the stored format, append a migration to {@link #MIGRATIONS}.
+ * Migration {@code n} (counting from 1) upgrades version {@code n - 1} to
+ * {@code n}. A migration must leave records that already have the new
+ * format unchanged.</p>
+ */
+final class SchemaMigrations {
+
+    /** One upgrade step, applied to a fully loaded database. */
+    @FunctionalInterface
+    interface Migration {
+        void apply(JSONObject db);
+    }
+
+    /** Accepts both "2025-01-05" and unpadded dates such as "2025-1-5". */
+    private static final DateTimeFormatter LENIENT_DATE = DateTimeFormatter.ofPattern("uuuu-M-d");
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            // 1: due dates are ISO dates ("2025-01-05") or null
+            db -> {
+                normalizeDueDates(db.optJSONArray("books"));
+                normalizeDueDates(db.optJSONArray("cds"));
+            },
+            // 2: due dates are epoch days (days since 1970-01-01) or null
+            db -> {
+                dueDatesToEpochDays(db.optJSONArray("books"));
+                dueDatesToEpochDays(db.optJSONArray("cds"));
+            }
+    );
+
+    /** Schema version written by this code. */
+    static final int CURRENT = MIGRATIONS.size();
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Brings {@code db} from {@code from} up to {@link #CURRENT}.
+     *
+     * @param db   the database, changed in place
+     * @param from schema version the data was stored with
+     */
+    static void migrate(JSONObject db, int from) {
+        for (int version = from; version < CURRENT; version++) {
+            MIGRATIONS.get(version).apply(db);
+        }
+    }
+
+    private static void normalizeDueDates(JSONArray records) {
+        if (records == null) return;
+
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record == null || !record.has("dueDate") || record.isNull("dueDate")) continue;
+
+            String due = record.optString("dueDate").trim();
+            if (due.isEmpty() || due.equals("null")) {
+                record.put("dueDate", JSONObject.NULL);
+                continue;
+            }
+            try {
+                record.put("dueDate", LocalDate.parse(due, LENIENT_DATE).toString());
+            } catch (DateTimeParseException e) {
+                // not a date we know how to read; left for a person to fix
+            }
+        }
+    }
+
+    private static void dueDatesToEpochDays(JSONArray records) {
+        if (records == null) return;
+
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record == null || !(record.opt("dueDate") instanceof String due)) continue;
+
+            try {
+                record.put("dueDate", LocalDate.parse(due, LENIENT_DATE).toEpochDay());
+            } catch (DateTimeParseException e) {
+                // not a date we know how to read; left for a person to fix
+            }
+        }
+    }
+}
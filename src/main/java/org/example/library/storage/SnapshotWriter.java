@@ -0,0 +1,333 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes database snapshots as compact JSON straight into a file channel.
+ *
+ * <p>{@code JSONObject.toString()} builds the whole document in a
+ * {@code StringBuilder}, which is then encoded into a second copy before it
+ * reaches the disk. This writer instead encodes records directly into one
+ * reused direct buffer and drains it to the channel whenever it fills up,
+ * so the document is never held in memory as text. Strings are encoded
+ * character by character and integers digit by digit; what is still
+ * allocated per record is small and short-lived, such as the iterator over
+ * each object's keys and the text of fractional numbers, which are
+ * formatted through {@link JSONObject#numberToString}.</p>
+ *
+ * <p>The output is the same text {@code toString()} produces, including
+ * org.json's escaping rules. An instance is not thread-safe; FileDatabase
+ * only uses it from the group-commit leader.</p>
+ *
+ * <p>{@link #writeCompressed(FileChannel, Object, int)} produces a GZIP file
+ * instead: each buffer is passed through one reused {@link Deflater} on its
+ * way to the channel, so the uncompressed text is never held in full
+ * either.</p>
+ */
+final class SnapshotWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /** GZIP member header: deflate, no flags, no time, unknown OS. */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private long drained;
+
+    // ===== Compression =====
+    private ByteBuffer compressed;
+    private Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private boolean compressing;
+
+    /**
+     * Writes {@code value} to the channel.
+     *
+     * @param channel destination, positioned where the value should start
+     * @param value   a JSONObject, JSONArray, list of records or plain value;
+     *                a {@link ByteBuffer} holds JSON that is already encoded
+     */
+    void write(FileChannel channel, Object value) throws IOException {
+        begin(channel, channel.position());
+        try {
+            writeValue(value);
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * Writes {@code value} to the channel as a GZIP stream.
+     *
+     * @param channel destination, positioned where the stream should start
+     * @param value   as for {@link #write(FileChannel, Object)}
+     * @param level   compression level, 0 to 9, or -1 for the default
+     */
+    void writeCompressed(FileChannel channel, Object value, int level) throws IOException {
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            compressed = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        deflater.reset();
+        deflater.setLevel(level);
+        crc.reset();
+
+        writeFully(channel, ByteBuffer.wrap(GZIP_HEADER));
+        begin(channel, channel.position());
+        long start = drained;
+        compressing = true;
+        try {
+            writeValue(value);
+            drain();
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt((int) (drained - start)).flip();
+            writeFully(channel, trailer);
+        } finally {
+            compressing = false;
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Starts writing at {@code position}, for callers that write several
+     * values; see {@link BinarySegment}.
+     */
+    void begin(FileChannel channel, long position) throws IOException {
+        channel.position(position);
+        this.channel = channel;
+        this.drained = position;
+        buffer.clear();
+    }
+
+    /**
+     * @return the file position the next byte will be written at
+     */
+    long position() {
+        return drained + buffer.position();
+    }
+
+    /**
+     * Writes one value as compact JSON.
+     */
+    void append(Object value) throws IOException {
+        writeValue(value);
+    }
+
+    void appendInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) drain();
+        buffer.putInt(value);
+    }
+
+    void appendLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) drain();
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes out whatever is still buffered.
+     */
+    void finish() throws IOException {
+        try {
+            if (channel != null) drain();
+        } finally {
+            channel = null;
+        }
+    }
+
+    // ===== Values =====
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            writeAscii("null");
+        } else if (value instanceof String text) {
+            writeString(text);
+        } else if (value instanceof ByteBuffer encoded) {
+            writeRaw(encoded.duplicate());
+        } else if (value instanceof JSONObject object) {
+            writeObject(object);
+        } else if (value instanceof JSONArray array) {
+            writeArray(array);
+        } else if (value instanceof List<?> list) {
+            writeArray(list);
+        } else if (value instanceof Boolean bool) {
+            writeAscii(bool ? "true" : "false");
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            writeAscii(JSONObject.numberToString(number));
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeObject(JSONObject object) throws IOException {
+        put((byte) '{');
+        boolean first = true;
+        for (String key : object.keySet()) {
+            if (!first) put((byte) ',');
+            first = false;
+
+            writeString(key);
+            put((byte) ':');
+            writeValue(object.opt(key));
+        }
+        put((byte) '}');
+    }
+
+    private void writeArray(Iterable<?> elements) throws IOException {
+        put((byte) '[');
+        boolean first = true;
+        for (Object element : elements) {
+            if (!first) put((byte) ',');
+            first = false;
+
+            writeValue(element);
+        }
+        put((byte) ']');
+    }
+
+    /** Writes a quoted, escaped string encoded as UTF-8. */
+    private void writeString(String text) throws IOException {
+        put((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (buffer.remaining() < 6) drain();
+
+            switch (c) {
+                case '"':  buffer.put((byte) '\\').put((byte) '"'); break;
+                case '\\': buffer.put((byte) '\\').put((byte) '\\'); break;
+                case '\n': buffer.put((byte) '\\').put((byte) 'n'); break;
+                case '\r': buffer.put((byte) '\\').put((byte) 'r'); break;
+                case '\t': buffer.put((byte) '\\').put((byte) 't'); break;
+                case '\b': buffer.put((byte) '\\').put((byte) 'b'); break;
+                case '\f': buffer.put((byte) '\\').put((byte) 'f'); break;
+                case '/':
+                    // org.json writes "</" as "<\/" so snapshots can be embedded in HTML
+                    if (i > 0 && text.charAt(i - 1) == '<') buffer.put((byte) '\\');
+                    buffer.put((byte) '/');
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        // the same characters org.json escapes
+                        buffer.put((byte) '\\').put((byte) 'u')
+                                .put(HEX[c >> 12]).put(HEX[c >> 8 & 0xf])
+                                .put(HEX[c >> 4 & 0xf]).put(HEX[c & 0xf]);
+                    } else if (c < 0x80) {
+                        buffer.put((byte) c);
+                    } else if (c < 0x800) {
+                        buffer.put((byte) (0xc0 | c >> 6))
+                                .put((byte) (0x80 | c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, text.charAt(++i));
+                        buffer.put((byte) (0xf0 | cp >> 18))
+                                .put((byte) (0x80 | cp >> 12 & 0x3f))
+                                .put((byte) (0x80 | cp >> 6 & 0x3f))
+                                .put((byte) (0x80 | cp & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        buffer.put((byte) '?');
+                    } else {
+                        buffer.put((byte) (0xe0 | c >> 12))
+                                .put((byte) (0x80 | c >> 6 & 0x3f))
+                                .put((byte) (0x80 | c & 0x3f));
+                    }
+            }
+        }
+        put((byte) '"');
+    }
+
+    /** Writes an integer without going through a String. */
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (buffer.remaining() < 20) drain();
+
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+
+    /** Copies bytes that are already encoded JSON. */
+    private void writeRaw(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (!buffer.hasRemaining()) drain();
+            int n = Math.min(bytes.remaining(), buffer.remaining());
+            buffer.put(buffer.position(), bytes, bytes.position(), n);
+            buffer.position(buffer.position() + n);
+            bytes.position(bytes.position() + n);
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            put((byte) text.charAt(i));
+        }
+    }
+
+    // ===== Buffer =====
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) drain();
+        buffer.put(b);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        drained += buffer.remaining();
+        if (compressing) {
+            crc.update(buffer.duplicate());
+            // the deflater keeps the buffer it was given; a duplicate stays
+            // consumed when the buffer itself is cleared for reuse
+            deflater.setInput(buffer.duplicate());
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        } else {
+            writeFully(channel, buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Runs the deflater once and writes what it produced. */
+    private void deflate() throws IOException {
+        deflater.deflate(compressed);
+        compressed.flip();
+        writeFully(channel, compressed);
+        compressed.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
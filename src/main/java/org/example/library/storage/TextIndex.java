@@ -0,0 +1,250 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index over one text field of a collection, such as the titles
+ * or the authors of the books, answering word and substring queries.
+ *
+ * <p>Each term of the text maps to the positions of the records that
+ * contain it, and a query returns the records containing every term of
+ * the query by intersecting those lists; the catalog is not walked. There
+ * are two kinds of index, built on first use of each:</p>
+ * <ul>
+ *     <li>{@link #withWords}: text is lowercased and split into words at
+ *     every character that is not a letter or a digit, so
+ *     {@code "Clean Code: 2nd Ed."} holds the words {@code clean},
+ *     {@code code}, {@code 2nd} and {@code ed}.</li>
+ *     <li>{@link #containing}: the terms are the trigrams of the lowercased
+ *     text, every run of three characters, so {@code "Sama"} holds
+ *     {@code sam} and {@code ama}. A record containing a query contains
+ *     all of the query's trigrams, so the intersection is a small superset
+ *     of the answer, which is then checked with {@link String#contains}.
+ *     Queries shorter than three characters have no trigrams and are
+ *     checked against every record.</li>
+ * </ul>
+ *
+ * <p>Like {@link RecordIndex}, the index lives on the database returned by
+ * {@link FileDatabase#load()} and keeps itself current on lookup as
+ * described in {@link CollectionIndex}. A record whose text was changed in
+ * place and saved is added under its new terms and keeps its old ones;
+ * every candidate is checked against the record's current text, so it is
+ * found by the new text and never returned for the old. Searching a
+ * database that {@code load()} did not return checks every record, as
+ * {@link RecordIndex} does.</p>
+ */
+public final class TextIndex extends CollectionIndex {
+
+    private final String field;
+    private final boolean trigrams;
+    private final Map<String, Postings> terms = new HashMap<>();
+
+    private TextIndex(String field, String keyField, boolean trigrams) {
+        super(keyField);
+        this.field = field;
+        this.trigrams = trigrams;
+    }
+
+    /**
+     * Finds the records whose field contains every word of a query.
+     *
+     * @param db         the loaded database
+     * @param collection "books", "cds" or "users"
+     * @param field      text field to search, such as "title"
+     * @param query      one or more words, in any order and case
+     * @return positions of the matching records, in catalog order;
+     *         empty if the query has no words
+     * @throws IllegalArgumentException if the collection has no key field
+     */
+    public static List<Integer> withWords(JSONObject db, String collection, String field, String query) {
+        Set<String> wanted = words(query);
+        if (wanted.isEmpty()) return List.of();
+
+        return find(db, collection, field, false, wanted,
+                record -> words(text(record, field)).containsAll(wanted));
+    }
+
+    /**
+     * Finds the records whose field contains a query, ignoring case. The
+     * result is exactly that of comparing {@code text.toLowerCase()} with
+     * {@code query.toLowerCase()} for every record.
+     *
+     * @param db         the loaded database
+     * @param collection "books", "cds" or "users"
+     * @param field      text field to search, such as "title"
+     * @param query      text to look for; an empty query matches every record
+     *                   that has the field
+     * @return positions of the matching records, in catalog order
+     * @throws IllegalArgumentException if the collection has no key field
+     */
+    public static List<Integer> containing(JSONObject db, String collection, String field, String query) {
+        // default locale, as the substring searches always compared
+        String lower = query.toLowerCase();
+        Set<String> wanted = trigrams(lower);
+
+        Predicate<JSONObject> matches = record -> {
+            String text = text(record, field);
+            return text != null && text.toLowerCase().contains(lower);
+        };
+        return find(db, collection, field, true, wanted, matches);
+    }
+
+    private static List<Integer> find(JSONObject db, String collection, String field, boolean trigrams,
+                                      Set<String> wanted, Predicate<JSONObject> matches) {
+        String keyField = keyField(collection);
+
+        JSONArray records = db.optJSONArray(collection);
+        if (records == null) return List.of();
+
+        if (db instanceof LazyDatabase lazy && !wanted.isEmpty()) {
+            String name = (trigrams ? "trigrams:" : "words:") + collection + "." + field;
+            TextIndex index = lazy.index(name, () -> new TextIndex(field, keyField, trigrams));
+            return index.positionsOf(records, wanted, matches);
+        }
+        return scan(records, matches);
+    }
+
+    private static List<Integer> scan(JSONArray records, Predicate<JSONObject> matches) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record != null && matches.test(record)) positions.add(i);
+        }
+        return positions;
+    }
+
+    /**
+     * Splits text into its lowercased words, without repeats.
+     *
+     * @param text text to split; may be {@code null}
+     * @return the words in order of first appearance
+     */
+    public static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null) return words;
+
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param lower lowercased text; may be {@code null}
+     * @return every run of three characters of the text, without repeats
+     */
+    static Set<String> trigrams(String lower) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (lower == null) return trigrams;
+
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            trigrams.add(lower.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private Set<String> terms(String text) {
+        if (!trigrams) return words(text);
+        return trigrams(text == null ? null : text.toLowerCase());
+    }
+
+    private static String text(JSONObject record, String field) {
+        return record.optString(field, null);
+    }
+
+    // ===== Lookup =====
+
+    private synchronized List<Integer> positionsOf(JSONArray records, Set<String> wanted,
+                                                   Predicate<JSONObject> matches) {
+        update(records);
+
+        // walk the shortest list, probing the others
+        Postings[] lists = new Postings[wanted.size()];
+        int n = 0;
+        for (String term : wanted) {
+            Postings list = terms.get(term);
+            if (list == null) return List.of();
+            lists[n++] = list;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < lists[0].size; i++) {
+            int position = lists[0].positions[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.length && inAll; j++) {
+                inAll = lists[j].contains(position);
+            }
+            if (!inAll) continue;
+
+            JSONObject record = records.optJSONObject(position);
+            if (record != null && matches.test(record)) positions.add(position);
+        }
+        return positions;
+    }
+
+    @Override
+    synchronized void reindex(JSONArray records, int position) {
+        if (isIndexed(position)) add(records, position, position + 1);
+    }
+
+    @Override
+    void clear() {
+        terms.clear();
+    }
+
+    @Override
+    void add(JSONArray records, int from, int to) {
+        for (int i = from; i < to; i++) {
+            JSONObject record = records.optJSONObject(i);
+            if (record == null) continue;
+
+            for (String term : terms(text(record, field))) {
+                terms.computeIfAbsent(term, t -> new Postings()).add(i);
+            }
+        }
+    }
+
+    /** Ascending record positions of one term. */
+    private static final class Postings {
+        private int[] positions = new int[2];
+        private int size;
+
+        void add(int position) {
+            int at = size == 0 || positions[size - 1] < position
+                    ? size : Arrays.binarySearch(positions, 0, size, position);
+            if (at < 0) {
+                at = -at - 1;
+            } else if (at < size) {
+                return; // a reindexed record that kept the term
+            }
+            if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+            System.arraycopy(positions, at, positions, at + 1, size - at);
+            positions[at] = position;
+            size++;
+        }
+
+        boolean contains(int position) {
+            return Arrays.binarySearch(positions, 0, size, position) >= 0;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.library.storage;
+
+/**
+ * Thrown when a change is about to be written over a database that another
+ * process has modified since this process read it.
+ *
+ * <p>Nothing has been written when this is thrown, and the in-memory copy
+ * has been dropped, so the conflict is retryable: load the database again,
+ * re-apply the change and save it. {@link FileDatabase#runInTransaction}
+ * does this automatically a few times before giving up.</p>
+ */
+public class WriteConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long readVersion;
+    private final long currentVersion;
+
+    /**
+     * @param readVersion    version the writer's copy was read at
+     * @param currentVersion version found on disk
+     */
+    public WriteConflictException(long readVersion, long currentVersion) {
+        super("Database changed by another process (read version " + readVersion
+                + ", current version " + currentVersion + ")");
+        this.readVersion = readVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    /**
+     * @return version of the database the rejected change was based on
+     */
+    public long getReadVersion() {
+        return readVersion;
+    }
+
+    /**
+     * @return version of the database on disk when the change was rejected
+     */
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -49,6 +49,19 @@ public class BookTest {
         assertEquals(50, b.getFine());
     }
 
+    @Test
+    void testDueDateIsKeptAsEpochDay() {
+        Book b = new Book("A", "B", "C", 1, true);
+        assertEquals(Book.NO_DUE_DATE, b.getDueDay());
+
+        b.setDueDay(LocalDate.of(2025, 1, 1).toEpochDay());
+        assertEquals(LocalDate.of(2025, 1, 1), b.getDueDate());
+
+        b.setDueDate(null);
+        assertEquals(Book.NO_DUE_DATE, b.getDueDay());
+        assertNull(b.getDueDate());
+    }
+
     @Test
     void testIncreaseQuantity() {
         Book b = new Book("A", "B", "C", 0, false);
@@ -42,6 +42,7 @@ class CDTest {
 
         cd.setDueDate(date);
         assertEquals(date, cd.getDueDate());
+        assertEquals(date.toEpochDay(), cd.getDueDay());
     }
 
     @Test
@@ -8,6 +8,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
+import java.util.function.Function;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -107,6 +109,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
 
             boolean result = adminService.unregisterUser("ghost", admin);
             assertFalse(result);
@@ -130,6 +134,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
 
             boolean result = adminService.unregisterUser("super", admin);
             assertFalse(result);
@@ -160,6 +166,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
 
             boolean result = adminService.unregisterUser("sara", admin);
             assertFalse(result);
@@ -186,6 +194,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
             mock.when(() -> FileDatabase.save(fakeDB)).thenAnswer(inv -> null);
 
             boolean result = adminService.unregisterUser("sara", admin);
@@ -221,6 +231,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
 
             boolean result = adminService.unregisterUser("sara", admin);
 
@@ -247,6 +259,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
             mock.when(() -> FileDatabase.save(fakeDB)).thenAnswer(inv -> null);
 
             boolean result = adminService.unregisterUser("dima-no-id", admin);
@@ -288,6 +302,8 @@ class AdminServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(fakeDB);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(fakeDB));
             mock.when(() -> FileDatabase.save(fakeDB)).thenAnswer(inv -> null);
 
             boolean result = adminService.unregisterUser("middle", admin);
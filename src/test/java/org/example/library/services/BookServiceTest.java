@@ -4,14 +4,19 @@ import org.example.library.models.Book;
 import org.example.library.models.User;
 import org.example.library.observers.Observer;
 import org.example.library.storage.FileDatabase;
+import org.example.library.storage.RecordIndex;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +30,18 @@ class BookServiceTest {
         service = new BookService();
     }
 
+    @AfterEach
+    void cleanUp() throws Exception {
+        String base = System.getProperty("user.dir") + "/test_library";
+        Files.deleteIfExists(Paths.get(base + ".json"));
+        Files.deleteIfExists(Paths.get(base + ".lock"));
+        Files.deleteIfExists(Paths.get(base + ".json.journal"));
+        for (String collection : new String[]{"users", "books", "cds", "loans"}) {
+            Files.deleteIfExists(Paths.get(base + "." + collection + ".json"));
+            Files.deleteIfExists(Paths.get(base + "." + collection + ".bin"));
+        }
+    }
+
     // ===================================================
     //                 findBookByISBN
     // ===================================================
@@ -76,6 +93,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.addBook(book);
@@ -86,6 +105,23 @@ class BookServiceTest {
         }
     }
 
+    @Test
+    void addBook_rejectsDuplicateIsbn() {
+        JSONObject db = new JSONObject();
+        db.put("books", new JSONArray().put(new JSONObject().put("isbn", "123").put("title", "Old")));
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> service.addBook(new Book("New", "Dima", "123", 1, true)));
+            assertEquals(1, db.getJSONArray("books").length());
+            mock.verify(() -> FileDatabase.saveRecord(any(), any(), any()), never());
+        }
+    }
+
     @Test
     void getAllBooks_returnsAll() {
         JSONObject db = new JSONObject();
@@ -110,10 +146,50 @@ class BookServiceTest {
         }
     }
 
+    @Test
+    void getAllBooks_returnsCopiesOfSharedModels() {
+        FileDatabase.useTestDatabase();
+        FileDatabase.reset();
+        service.addBook(new Book("T1", "A1", "1", 2, true));
+
+        Book changed = service.getAllBooks().get(0);
+        changed.setFine(9);
+        changed.increaseQuantity(1);
+
+        Book reread = service.getAllBooks().get(0);
+        assertEquals(0, reread.getFine());
+        assertEquals(2, reread.getQuantity());
+        assertEquals(0, service.searchByISBN("1").get(0).getFine());
+    }
+
     // ===================================================
     //                searchByTitle / Author
     // ===================================================
 
+    @Test
+    void searchByTitle_findsTitleRenamedInPlace() {
+        FileDatabase.useTestDatabase();
+        FileDatabase.reset();
+        service.addBook(new Book("Java Basics", "A1", "1", 1, true));
+        service.addBook(new Book("Go", "A2", "2", 1, true));
+        assertEquals(1, service.searchByTitle("java basics").size());
+        assertEquals(List.of("Java Basics"), service.completeTitle("jav", 5));
+
+        FileDatabase.runInTransaction(db -> {
+            JSONObject book = RecordIndex.find(db, "books", "1");
+            book.put("title", "Rust Primer");
+            FileDatabase.saveRecord(db, "books", book);
+            return null;
+        });
+
+        assertTrue(service.searchByTitle("java basics").isEmpty());
+        assertTrue(service.searchByTitle("java", true).isEmpty());
+        assertTrue(service.completeTitle("jav", 5).isEmpty());
+        assertEquals("1", service.searchByTitle("rust primer").get(0).getIsbn());
+        assertEquals("1", service.searchByTitle("primer", true).get(0).getIsbn());
+        assertEquals(List.of("Rust Primer"), service.completeTitle("rus", 5));
+    }
+
     @Test
     void searchByTitle_works() {
         JSONObject db = new JSONObject();
@@ -160,6 +236,55 @@ class BookServiceTest {
         }
     }
 
+    @Test
+    void searchByWords_matchesWholeWordsOnly() {
+        JSONObject db = new JSONObject();
+        JSONArray arr = new JSONArray();
+
+        arr.put(new JSONObject().put("title", "Java Programming").put("author", "Dima Sama")
+                .put("isbn", "1").put("quantity", 1).put("available", true));
+        arr.put(new JSONObject().put("title", "JavaScript").put("author", "Asmaa")
+                .put("isbn", "2").put("quantity", 1).put("available", true));
+        db.put("books", arr);
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+
+            List<Book> words = service.searchByTitle("java", true);
+            assertEquals(1, words.size());
+            assertEquals("1", words.get(0).getIsbn());
+            assertEquals(2, service.searchByTitle("java", false).size());
+
+            assertEquals(1, service.searchByAuthor("sama dima", true).size());
+            assertEquals(2, service.searchByAuthor("ma", false).size());
+            assertEquals("1", service.searchByAuthor("AMA").get(0).getIsbn());
+            assertTrue(service.searchByAuthor("ma", true).isEmpty());
+        }
+    }
+
+    @Test
+    void completeTitleAndAuthor_returnPrefixMatches() {
+        JSONObject db = new JSONObject();
+        JSONArray arr = new JSONArray();
+
+        arr.put(new JSONObject().put("title", "Java Programming").put("author", "Dima")
+                .put("isbn", "1").put("quantity", 1).put("available", true));
+        arr.put(new JSONObject().put("title", "JavaScript").put("author", "Dina")
+                .put("isbn", "2").put("quantity", 1).put("available", true));
+        arr.put(new JSONObject().put("title", "Clean Code").put("author", "Dima")
+                .put("isbn", "3").put("quantity", 1).put("available", true));
+        db.put("books", arr);
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+
+            assertEquals(List.of("Java Programming", "JavaScript"), service.completeTitle("jav", 10));
+            assertEquals(List.of("Java Programming"), service.completeTitle("java ", 10));
+            assertEquals(List.of("Dima", "Dina"), service.completeAuthor("di", 10));
+            assertThrows(IllegalArgumentException.class, () -> service.completeAuthor("di", 0));
+        }
+    }
+
     // ===================================================
     //                 borrowBook
     // ===================================================
@@ -183,6 +308,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.borrowBook("999", u);
@@ -210,6 +337,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowBook("999", u);
 
@@ -234,6 +363,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             service.borrowBook("999", u);
 
             assertTrue(b1.getBoolean("borrowed"));
@@ -258,6 +389,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.payFine("555", 10);
@@ -280,6 +413,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.payFine("555", 4);
@@ -331,7 +466,7 @@ class BookServiceTest {
         JSONObject b1 = new JSONObject();
         b1.put("borrowedBy", 5);
         b1.put("borrowed", true);
-        b1.put("dueDate", LocalDate.now().minusDays(3).toString());
+        b1.put("dueDate", LocalDate.now().minusDays(3).toEpochDay());
         arr.put(b1);
 
         db.put("books", arr);
@@ -362,7 +497,7 @@ class BookServiceTest {
         JSONObject b1 = new JSONObject();
         b1.put("borrowedBy", 1);
         b1.put("borrowed", true);
-        b1.put("dueDate", LocalDate.now().minusDays(2).toString());
+        b1.put("dueDate", LocalDate.now().minusDays(2).toEpochDay());
         arr.put(b1);
 
         db.put("books", arr);
@@ -400,6 +535,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.borrowBook("000", u);
@@ -419,6 +556,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowBook("DOES_NOT_EXIST", u);
 
@@ -441,6 +580,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.payFine("555", 5);
 
@@ -455,6 +596,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.payFine("XXX", 5);
 
@@ -476,6 +619,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.checkOverdueBooks();
@@ -520,6 +665,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.checkOverdueBooks();
@@ -544,6 +691,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.checkOverdueBooks();
@@ -559,13 +708,15 @@ class BookServiceTest {
 
         JSONObject b = new JSONObject();
         b.put("borrowed", true);
-        b.put("dueDate", LocalDate.now().toString()); // today → not late
+        b.put("dueDate", LocalDate.now().toEpochDay()); // today → not late
         arr.put(b);
 
         db.put("books", arr);
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(inv -> null);
 
             service.checkOverdueBooks();
@@ -574,6 +725,28 @@ class BookServiceTest {
         }
     }
 
+    @Test
+    void checkOverdueBooks_copiesOnlyLateBooks() {
+        FileDatabase.useTestDatabase();
+        FileDatabase.reset();
+        service.addBook(new Book("T1", "A1", "1", 1, true));
+        service.addBook(new Book("T2", "A2", "2", 1, true));
+        FileDatabase.runInTransaction(db -> {
+            JSONObject late = RecordIndex.find(db, "books", "2");
+            late.put("borrowed", true);
+            late.put("dueDate", LocalDate.now().minusDays(3).toEpochDay());
+            FileDatabase.saveRecord(db, "books", late);
+            return null;
+        });
+        JSONObject onTime = FileDatabase.load().getJSONArray("books").getJSONObject(0);
+
+        service.checkOverdueBooks();
+
+        JSONArray books = FileDatabase.load().getJSONArray("books");
+        assertSame(onTime, books.getJSONObject(0));
+        assertTrue(books.getJSONObject(1).getDouble("fine") > 0);
+    }
+
     @Test
     void getOverdueBooks_notBorrowed() {
         JSONObject db = new JSONObject();
@@ -582,7 +755,7 @@ class BookServiceTest {
         JSONObject b = new JSONObject();
         b.put("borrowedBy", 7);
         b.put("borrowed", false);
-        b.put("dueDate", LocalDate.now().minusDays(5).toString());
+        b.put("dueDate", LocalDate.now().minusDays(5).toEpochDay());
         arr.put(b);
 
         db.put("books", arr);
@@ -596,14 +769,14 @@ class BookServiceTest {
 
 
     @Test
-    void getOverdueBooks_badDateFormatFixed() {
+    void getOverdueBooks_nullDueDateSkipped() {
         JSONObject db = new JSONObject();
         JSONArray arr = new JSONArray();
 
         JSONObject b = new JSONObject();
         b.put("borrowedBy", 1);
         b.put("borrowed", true);
-        b.put("dueDate", "2025-1-3"); // bad format, will be auto-fixed
+        b.put("dueDate", JSONObject.NULL); // unpadded dates are migrated on load, null stays null
         arr.put(b);
 
         db.put("books", arr);
@@ -611,8 +784,7 @@ class BookServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
 
-            List<JSONObject> result = service.getOverdueBooksForUser(1);
-            assertTrue(result.size() >= 0);  // branch executed
+            assertEquals(0, service.getOverdueBooksForUser(1).size());
         }
     }
 
@@ -625,7 +797,7 @@ class BookServiceTest {
         JSONObject b = new JSONObject();
         b.put("borrowedBy", 5);
         b.put("borrowed", true);
-        b.put("dueDate", LocalDate.now().toString()); // not overdue
+        b.put("dueDate", LocalDate.now().toEpochDay()); // not overdue
         arr.put(b);
 
         db.put("books", arr);
@@ -651,6 +823,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.payFine("123", 5);
 
@@ -677,6 +851,8 @@ class BookServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowBook("NEG", u);
 
@@ -3,6 +3,7 @@ package org.example.library.services;
 import org.example.library.models.CD;
 import org.example.library.models.User;
 import org.example.library.storage.FileDatabase;
+import org.example.library.storage.RecordCodec;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +12,7 @@ import org.mockito.MockedStatic;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -38,6 +40,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(i -> null);
 
             service.addCD(cd);
@@ -51,6 +55,44 @@ class CDServiceTest {
         }
     }
 
+    @Test
+    void addCD_rejectsDuplicateId() {
+        JSONObject db = new JSONObject();
+        db.put("cds", new JSONArray().put(new JSONObject().put("id", "C1").put("title", "Old")));
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> service.addCD(new CD("C1", "New", "Artist", 1, true)));
+            assertEquals(1, db.getJSONArray("cds").length());
+        }
+    }
+
+    // ============================
+    // completeTitle() / completeArtist()
+    // ============================
+
+    @Test
+    void completeTitleAndArtist_returnPrefixMatches() {
+        JSONObject db = new JSONObject();
+        JSONArray arr = new JSONArray();
+        arr.put(new JSONObject().put("id", "C1").put("title", "Blue Train").put("artist", "Coltrane"));
+        arr.put(new JSONObject().put("id", "C2").put("title", "Blue Note").put("artist", "Various"));
+        arr.put(new JSONObject().put("id", "C3").put("title", "Kind of Blue").put("artist", "Miles Davis"));
+        db.put("cds", arr);
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+
+            assertEquals(List.of("Blue Note", "Blue Train"), service.completeTitle("blue", 5));
+            assertEquals(List.of("Blue Note"), service.completeTitle("BLUE", 1));
+            assertEquals(List.of("Miles Davis"), service.completeArtist("mi", 5));
+        }
+    }
+
     // ============================
     // getAllCDs()
     // ============================
@@ -106,6 +148,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(i -> null);
 
             service.borrowCD("C1", u);
@@ -135,6 +179,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowCD("C1", u);
 
@@ -160,6 +206,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowCD("C1", u);
 
@@ -177,6 +225,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowCD("NOPE", u);
 
@@ -196,7 +246,7 @@ class CDServiceTest {
         JSONObject c = new JSONObject();
         c.put("id", "C1");
         c.put("borrowed", true);
-        c.put("dueDate", LocalDate.now().minusDays(3).toString());
+        c.put("dueDate", LocalDate.now().minusDays(3).toEpochDay());
 
         arr.put(c);
         db.put("cds", arr);
@@ -204,6 +254,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
             mock.when(() -> FileDatabase.save(db)).thenAnswer(i -> null);
 
             service.checkOverdueCDs();
@@ -226,6 +278,8 @@ class CDServiceTest {
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
 
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.checkOverdueCDs();
 
@@ -274,15 +328,11 @@ class CDServiceTest {
         c.put("quantity", 4);
         c.put("available", true);
         c.put("borrowed", true);
-        c.put("dueDate", LocalDate.now().toString());
+        c.put("dueDate", LocalDate.now().toEpochDay());
         c.put("fine", 5.5);
         c.put("borrowedBy", 20);
 
-        // Use reflection to call private method
-        var m = CDService.class.getDeclaredMethod("jsonToCD", JSONObject.class);
-        m.setAccessible(true);
-
-        CD cd = (CD) m.invoke(service, c);
+        CD cd = RecordCodec.toCD(c);
 
         assertEquals("C9", cd.getId());
         assertEquals(true, cd.isBorrowed());
@@ -299,10 +349,7 @@ class CDServiceTest {
         c.put("quantity", 2);
         c.put("available", true);
 
-        var m = CDService.class.getDeclaredMethod("jsonToCD", JSONObject.class);
-        m.setAccessible(true);
-
-        CD cd = (CD) m.invoke(service, c);
+        CD cd = RecordCodec.toCD(c);
 
         assertFalse(cd.isBorrowed());
         assertEquals(0.0, cd.getFine());
@@ -328,6 +375,8 @@ class CDServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             assertThrows(Exception.class, () -> service.borrowCD("E1", null));
         }
@@ -351,6 +400,8 @@ class CDServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.borrowCD("N1", u);
 
@@ -372,6 +423,8 @@ class CDServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.checkOverdueCDs();
 
@@ -394,6 +447,8 @@ class CDServiceTest {
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.checkOverdueCDs();
 
@@ -409,13 +464,15 @@ class CDServiceTest {
 
         JSONObject c = new JSONObject();
         c.put("borrowed", true);
-        c.put("dueDate", LocalDate.now().toString());
+        c.put("dueDate", LocalDate.now().toEpochDay());
 
         arr.put(c);
         db.put("cds", arr);
 
         try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
             mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any()))
+                    .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
 
             service.checkOverdueCDs();
 
@@ -0,0 +1,110 @@
+package org.example.library.services;
+
+import org.example.library.storage.FileDatabase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExportServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ExportService service;
+    private JSONObject db;
+
+    @BeforeEach
+    void setup() {
+        service = new ExportService();
+        db = new JSONObject();
+        db.put("books", new JSONArray()
+                .put(new JSONObject().put("isbn", "1").put("title", "Clean Code, 2nd").put("author", "Martin")
+                        .put("quantity", 2).put("available", true))
+                .put(new JSONObject().put("isbn", "2").put("title", "Late").put("author", "Sara")
+                        .put("quantity", 0).put("available", false).put("borrowed", true).put("borrowedBy", 4)
+                        .put("dueDate", LocalDate.of(2025, 1, 3).toEpochDay()).put("fine", 20)));
+        db.put("cds", new JSONArray()
+                .put(new JSONObject().put("id", "C1").put("title", "Hits").put("artist", "A")
+                        .put("quantity", 1).put("available", true).put("borrowed", false)
+                        .put("dueDate", JSONObject.NULL).put("fine", 0).put("borrowedBy", JSONObject.NULL)));
+        db.put("users", new JSONArray()
+                .put(new JSONObject().put("id", 4).put("username", "sara").put("password", "secret")
+                        .put("role", "user").put("email", "sara@mail.com")));
+    }
+
+    @Test
+    void exportBooksCsv() throws IOException {
+        Path file = dir.resolve("books.csv");
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::loadSnapshot).thenReturn(db);
+
+            assertEquals(2, service.export("books", file.toString()));
+        }
+
+        assertEquals(List.of(
+                "isbn,title,author,quantity,available,borrowed,borrowedBy,dueDate,fine",
+                "1,\"Clean Code, 2nd\",Martin,2,true,false,,,0.0",
+                "2,Late,Sara,0,false,true,4,2025-01-03,20.0"), Files.readAllLines(file));
+    }
+
+    @Test
+    void exportUsersJsonlLeavesOutPasswords() throws IOException {
+        Path file = dir.resolve("users.jsonl");
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::loadSnapshot).thenReturn(db);
+
+            service.export("users", file.toString());
+        }
+
+        JSONObject row = new JSONObject(Files.readAllLines(file).get(0));
+        assertEquals("sara", row.getString("username"));
+        assertFalse(row.has("password"));
+    }
+
+    @Test
+    void exportAllUsesOneSnapshot() throws IOException {
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::loadSnapshot).thenReturn(db);
+
+            Map<String, Long> rows = service.exportAll(dir.toString(), "csv");
+
+            assertEquals(Map.of("books", 2L, "cds", 1L, "users", 1L, "fines", 1L), rows);
+            mock.verify(FileDatabase::loadSnapshot, times(1));
+        }
+
+        assertEquals("book,2,Late,4,20.0", Files.readAllLines(dir.resolve("fines.csv")).get(1));
+        assertEquals("C1,Hits,A,1,true,false,,,0.0", Files.readAllLines(dir.resolve("cds.csv")).get(1));
+    }
+
+    @Test
+    void unknownTableOrFormatIsRejected() {
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::loadSnapshot).thenReturn(db);
+
+            assertThrows(IllegalArgumentException.class, () -> service.export("loans", "x.csv"));
+            assertThrows(IllegalArgumentException.class, () -> service.export("books", "x.xml"));
+        }
+    }
+
+    @Test
+    void escapeCsv_quotesOnlyWhenNeeded() {
+        assertEquals("plain", ExportService.escapeCsv("plain"));
+        assertEquals("\"a \"\"b\"\"\"", ExportService.escapeCsv("a \"b\""));
+        assertEquals("\"x\ny\"", ExportService.escapeCsv("x\ny"));
+    }
+}
@@ -0,0 +1,210 @@
+package org.example.library.services;
+
+import org.example.library.models.ImportReport;
+import org.example.library.storage.FileDatabase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ImportServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ImportService service;
+    private JSONObject db;
+
+    @BeforeEach
+    void setup() {
+        service = new ImportService();
+        db = new JSONObject();
+        JSONArray books = new JSONArray();
+        books.put(new JSONObject().put("isbn", "100").put("title", "Old").put("author", "A")
+                .put("quantity", 1).put("available", true));
+        db.put("books", books);
+    }
+
+    private MockedStatic<FileDatabase> mockDatabase() {
+        MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class);
+        mock.when(FileDatabase::load).thenReturn(db);
+        mock.when(() -> FileDatabase.runInTransaction(any()))
+                .thenAnswer(inv -> inv.<Function<JSONObject, Object>>getArgument(0).apply(db));
+        return mock;
+    }
+
+    private String write(String name, String... lines) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, List.of(lines));
+        return file.toString();
+    }
+
+    @Test
+    void importCsv_addsBooksAndSkipsDuplicatesAndBadRows() throws IOException {
+        String file = write("books.csv",
+                "title,author,isbn,quantity",
+                "\"Clean Code, 2nd\",Martin,1,3",
+                "Dup In File,X,1,2",
+                "Dup In Catalog,Y,100,2",
+                "No Quantity,Z,2,many",
+                "\"Say \"\"Hi\"\"\",Q,3,0");
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            ImportReport report = service.importBooks(file);
+
+            assertEquals(5, report.getRowsRead());
+            assertEquals(2, report.getAdded());
+            assertEquals(2, report.getDuplicates());
+            assertEquals(1, report.getRejected());
+
+            JSONArray books = db.getJSONArray("books");
+            assertEquals(3, books.length());
+            assertEquals("Clean Code, 2nd", books.getJSONObject(1).getString("title"));
+            assertEquals("Say \"Hi\"", books.getJSONObject(2).getString("title"));
+            assertFalse(books.getJSONObject(2).getBoolean("available"));
+            mock.verify(() -> FileDatabase.runInTransaction(any()), times(1));
+        }
+    }
+
+    @Test
+    void importJsonl_readsOneBookPerLine() throws IOException {
+        String file = write("books.jsonl",
+                "{\"isbn\":\"7\",\"title\":\"T\",\"author\":\"A\",\"quantity\":2}",
+                "",
+                "{not json",
+                "{\"isbn\":\"8\",\"title\":\"U\",\"author\":\"B\",\"quantity\":\"4\"}");
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            ImportReport report = service.importBooks(file);
+
+            assertEquals(2, report.getAdded());
+            assertEquals(1, report.getRejected());
+            assertEquals(4, db.getJSONArray("books").getJSONObject(2).getInt("quantity"));
+            mock.verify(() -> FileDatabase.saveRecords(eq(db), eq("books"), anyList()), times(1));
+        }
+    }
+
+    @Test
+    void importCommitsInBatches() throws IOException {
+        String file = write("books.csv",
+                "isbn,title,author,quantity", "1,a,x,1", "2,b,x,1", "3,c,x,1", "4,d,x,1", "5,e,x,1");
+        service.setBatchSize(2);
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            service.importBooks(file);
+
+            mock.verify(() -> FileDatabase.runInTransaction(any()), times(3));
+            mock.verify(() -> FileDatabase.saveRecords(eq(db), eq("books"), anyList()), times(3));
+        }
+        assertFalse(Files.exists(dir.resolve("books.csv.progress")));
+    }
+
+    @Test
+    void interruptedImportResumesAfterLastBatch() throws IOException {
+        String file = write("books.csv",
+                "isbn,title,author,quantity", "1,a,x,1", "2,b,x,1", "3,c,x,1", "4,d,x,1", "5,e,x,1");
+        service.setBatchSize(2);
+        AtomicInteger commits = new AtomicInteger();
+
+        try (MockedStatic<FileDatabase> mock = mockStatic(FileDatabase.class)) {
+            mock.when(FileDatabase::load).thenReturn(db);
+            mock.when(() -> FileDatabase.runInTransaction(any())).thenAnswer(inv -> {
+                if (commits.incrementAndGet() == 2) throw new RuntimeException("disk full");
+                return inv.<Function<JSONObject, Object>>getArgument(0).apply(db);
+            });
+
+            assertThrows(RuntimeException.class, () -> service.importBooks(file));
+        }
+        assertEquals("2", Files.readString(dir.resolve("books.csv.progress")));
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            ImportReport report = service.importBooks(file);
+
+            assertEquals(2, report.getResumedAt());
+            assertEquals(3, report.getAdded());
+            assertEquals(6, db.getJSONArray("books").length());
+            mock.verify(() -> FileDatabase.runInTransaction(any()), times(2));
+        }
+        assertFalse(Files.exists(dir.resolve("books.csv.progress")));
+    }
+
+    @Test
+    void importSkipsBookAddedSinceImportStarted() throws IOException {
+        String file = write("books.csv", "isbn,title,author,quantity", "1,a,x,1", "2,b,x,1");
+        service.setBatchSize(1);
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            // another writer adds ISBN 2 while the first batch commits
+            mock.when(() -> FileDatabase.saveRecords(eq(db), eq("books"), anyList())).thenAnswer(inv -> {
+                if (db.getJSONArray("books").length() == 2) {
+                    db.getJSONArray("books").put(new JSONObject().put("isbn", "2").put("title", "Other"));
+                }
+                return null;
+            });
+
+            ImportReport report = service.importBooks(file);
+
+            assertEquals(1, report.getAdded());
+            assertEquals(1, report.getDuplicates());
+            assertEquals("Other", db.getJSONArray("books").getJSONObject(2).getString("title"));
+        }
+    }
+
+    @Test
+    void exportedTitleWithLineBreakIsImportedBack() throws IOException {
+        JSONObject source = new JSONObject().put("books", new JSONArray()
+                .put(new JSONObject().put("isbn", "9").put("title", "Line one\nLine \"two\"")
+                        .put("author", "A, B").put("quantity", 2).put("available", true)));
+        Path file = dir.resolve("export.csv");
+
+        try (MockedStatic<FileDatabase> mock = mockDatabase()) {
+            mock.when(FileDatabase::loadSnapshot).thenReturn(source);
+            new ExportService().export("books", file.toString());
+
+            ImportReport report = service.importBooks(file.toString());
+
+            assertEquals(1, report.getAdded());
+            assertEquals(0, report.getRejected());
+            JSONObject imported = db.getJSONArray("books").getJSONObject(1);
+            assertEquals("Line one\nLine \"two\"", imported.getString("title"));
+            assertEquals("A, B", imported.getString("author"));
+        }
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.importBooks("books.xml"));
+        assertThrows(IllegalArgumentException.class, () -> service.setBatchSize(0));
+    }
+
+    @Test
+    void splitCsv_handlesQuotes() {
+        assertEquals(List.of("a", "b,c", "d\"e", ""), ImportService.splitCsv("a,\"b,c\",\"d\"\"e\","));
+        assertNull(ImportService.splitCsv("\"open"));
+    }
+
+    @Test
+    void nextCsvRow_joinsLinesOfQuotedField() throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader("a,\"b\nc\"\"\nd\",e\nf,g\n\"open\n"));
+
+        assertEquals("a,\"b\nc\"\"\nd\",e", ImportService.nextCsvRow(in));
+        assertEquals("f,g", ImportService.nextCsvRow(in));
+        assertEquals("\"open", ImportService.nextCsvRow(in));
+        assertNull(ImportService.nextCsvRow(in));
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.library.storage;
+
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the AtomicFile class.
+ */
+class AtomicFileTest {
+
+    private static final Path TEST_PATH =
+            Paths.get(System.getProperty("user.dir") + "/test_atomic.json");
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        Files.deleteIfExists(TEST_PATH);
+    }
+
+    @Test
+    void testWriteReplacesContent() throws Exception {
+        AtomicFile.write(TEST_PATH, "{\"v\":1}");
+        AtomicFile.write(TEST_PATH, "{\"v\":2}");
+
+        assertEquals("{\"v\":2}", Files.readString(TEST_PATH));
+    }
+
+    @Test
+    void testWriteLeavesNoTemporaryFiles() throws Exception {
+        AtomicFile.write(TEST_PATH, "{}");
+
+        try (Stream<Path> files = Files.list(TEST_PATH.toAbsolutePath().getParent())) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith("test_atomic.json")
+                    && p.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BinarySegment}.
+ */
+class BinarySegmentTest {
+
+    private static final Path TEST_FILE =
+            Paths.get(System.getProperty("user.dir"), "test_library_segment.bin");
+    private static final Path COPY_FILE =
+            Paths.get(System.getProperty("user.dir"), "test_library_segment_copy.bin");
+
+    private final SnapshotWriter writer = new SnapshotWriter();
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+        Files.deleteIfExists(COPY_FILE);
+    }
+
+    private static JSONArray books(int count) {
+        JSONArray books = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            books.put(new JSONObject().put("isbn", String.valueOf(i)).put("title", "Book " + i).put("fine", 1.5));
+        }
+        return books;
+    }
+
+    private void write(Path path, List<Object> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BinarySegment.write(channel, records, writer);
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        JSONArray books = books(3000);
+        List<Object> records = new ArrayList<>();
+        books.forEach(records::add);
+        write(TEST_FILE, records);
+
+        BinarySegment.MappedRecords read = BinarySegment.read(TEST_FILE);
+
+        assertEquals(3000, read.length());
+        assertTrue(read.similar(books));
+    }
+
+    @Test
+    void testRecordsAreDecodedOnAccess() throws IOException {
+        JSONArray books = books(10);
+        write(TEST_FILE, List.of(books.get(0), books.get(1), books.get(2)));
+
+        BinarySegment.MappedRecords read = BinarySegment.read(TEST_FILE);
+        assertEquals("Book 1", read.getJSONObject(1).getString("title"));
+
+        assertFalse(read.isDecoded(0));
+        assertTrue(read.isDecoded(1));
+        assertFalse(read.isDecoded(2));
+    }
+
+    @Test
+    void testUndecodedRecordsAreCopiedUnchanged() throws IOException {
+        JSONArray books = books(3);
+        write(TEST_FILE, List.of(books.get(0), books.get(1), books.get(2)));
+
+        BinarySegment.MappedRecords read = BinarySegment.read(TEST_FILE);
+        read.getJSONObject(2).put("title", "Changed");
+        read.put(new JSONObject().put("isbn", "new"));
+        write(COPY_FILE, read.snapshot());
+
+        BinarySegment.MappedRecords copy = BinarySegment.read(COPY_FILE);
+        assertEquals(4, copy.length());
+        assertEquals("Book 0", copy.getJSONObject(0).getString("title"));
+        assertEquals("Changed", copy.getJSONObject(2).getString("title"));
+        assertEquals("new", copy.getJSONObject(3).getString("isbn"));
+    }
+
+    @Test
+    void testRemoveKeepsRemainingRecordsInPlace() throws IOException {
+        JSONArray books = books(3);
+        write(TEST_FILE, List.of(books.get(0), books.get(1), books.get(2)));
+
+        BinarySegment.MappedRecords read = BinarySegment.read(TEST_FILE);
+        read.remove(0);
+
+        assertEquals("Book 1", read.getJSONObject(0).getString("title"));
+        assertEquals("Book 2", read.getJSONObject(1).getString("title"));
+    }
+
+    @Test
+    void testJsonFileIsRejected() throws IOException {
+        Files.writeString(TEST_FILE, "[{\"isbn\":\"1\"}]");
+
+        assertThrows(IOException.class, () -> BinarySegment.read(TEST_FILE));
+    }
+
+    @Test
+    void testEntryPointingOutsideRecordsIsRejected() throws IOException {
+        JSONArray books = books(2);
+        write(TEST_FILE, List.of(books.get(0), books.get(1)));
+
+        // point the second entry's offset past the end of the file
+        long table = ByteBuffer.wrap(Files.readAllBytes(TEST_FILE)).getLong(16);
+        try (FileChannel channel = FileChannel.open(TEST_FILE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, 1L << 40), table + BinarySegment.ENTRY_SIZE);
+        }
+
+        BinarySegment.MappedRecords read = BinarySegment.read(TEST_FILE);
+        assertEquals("Book 0", read.getJSONObject(0).getString("title"));
+        assertThrows(JSONException.class, () -> read.opt(1));
+    }
+}
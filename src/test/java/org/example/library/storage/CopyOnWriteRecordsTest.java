@@ -0,0 +1,71 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CopyOnWriteRecords}.
+ */
+class CopyOnWriteRecordsTest {
+
+    private static JSONArray committed() {
+        return new JSONArray()
+                .put(new JSONObject().put("isbn", "1").put("quantity", 2))
+                .put(new JSONObject().put("isbn", "2").put("quantity", 5));
+    }
+
+    @Test
+    void testChangesDoNotReachCommittedVersion() {
+        JSONArray committed = committed();
+        CopyOnWriteRecords records = new CopyOnWriteRecords(committed);
+
+        records.getJSONObject(0).put("quantity", 1);
+        records.put(new JSONObject().put("isbn", "3"));
+
+        assertEquals(1, records.getJSONObject(0).getInt("quantity"));
+        assertEquals(2, committed.getJSONObject(0).getInt("quantity"));
+        assertEquals(2, committed.length());
+        assertEquals(3, records.length());
+    }
+
+    @Test
+    void testRecordIsCopiedOnce() {
+        CopyOnWriteRecords records = new CopyOnWriteRecords(committed());
+        JSONObject added = new JSONObject().put("isbn", "3");
+        records.put(added);
+
+        assertSame(records.getJSONObject(0), records.getJSONObject(0));
+        assertSame(added, records.getJSONObject(2));
+    }
+
+    @Test
+    void testFrozenRecordsAreShared() {
+        CopyOnWriteRecords first = new CopyOnWriteRecords(committed());
+        first.freeze();
+        JSONObject record = first.getJSONObject(1);
+
+        CopyOnWriteRecords second = new CopyOnWriteRecords(first);
+
+        assertSame(record, first.getJSONObject(1));
+        assertNotSame(record, second.getJSONObject(1));
+        assertTrue(first.isFrozen());
+        assertFalse(second.isFrozen());
+    }
+
+    @Test
+    void testEncodedRecordIsParsedOnAccess() {
+        ByteBuffer encoded = ByteBuffer.wrap("{\"isbn\":\"9\"}".getBytes(StandardCharsets.UTF_8));
+        CopyOnWriteRecords records = new CopyOnWriteRecords(new JSONArray());
+        records.put(encoded);
+
+        assertSame(encoded, CopyOnWriteRecords.slots(records).get(0));
+        assertEquals("9", records.getJSONObject(0).getString("isbn"));
+        assertInstanceOf(JSONObject.class, CopyOnWriteRecords.slots(records).get(0));
+    }
+}
@@ -7,6 +7,11 @@ import org.junit.jupiter.api.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,6 +27,12 @@ class FileDatabaseTest {
 
     private static final String TEST_PATH =
             System.getProperty("user.dir") + "/test_library.json";
+    private static final String EXPORT_PATH =
+            System.getProperty("user.dir") + "/test_library_export.json";
+
+    private static String segmentPath(String collection) {
+        return System.getProperty("user.dir") + "/test_library." + collection + ".json";
+    }
 
     @BeforeEach
     void setUp() {
@@ -31,7 +42,24 @@ class FileDatabaseTest {
 
     @AfterEach
     void cleanUp() throws Exception {
+        FileDatabase.useWriteBehind(false);
+        FileDatabase.setWriteBehindWindow(50);
+        FileDatabase.setWriteBehindLimit(100);
+        FileDatabase.useJournal(false);
+        FileDatabase.useBinarySegments(false);
+        FileDatabase.useProcessLock(false);
+        FileDatabase.useBackgroundCheckpoints(false);
+        FileDatabase.useCompressedSegments(false);
+        FileDatabase.setCheckpointBytes(1024 * 1024);
+        FileDatabase.setCheckpointAge(10 * 60 * 1000);
         Files.deleteIfExists(Paths.get(TEST_PATH));
+        Files.deleteIfExists(Paths.get(TEST_PATH.replace(".json", ".lock")));
+        Files.deleteIfExists(Paths.get(TEST_PATH + ".journal"));
+        for (String collection : new String[]{"users", "books", "cds", "loans"}) {
+            Files.deleteIfExists(Paths.get(segmentPath(collection)));
+            Files.deleteIfExists(Paths.get(segmentPath(collection).replace(".json", ".bin")));
+        }
+        Files.deleteIfExists(Paths.get(EXPORT_PATH));
     }
 
     @Test
@@ -77,4 +105,721 @@ class FileDatabaseTest {
         assertEquals(0, resetJson.getJSONArray("books").length());
         assertEquals(0, resetJson.getJSONArray("loans").length());
     }
+
+    @Test
+    void testRepeatedLoadUsesCachedCopy() {
+        FileDatabase.load();
+        long hits = FileDatabase.getCacheHits();
+        long misses = FileDatabase.getCacheMisses();
+
+        JSONObject first = FileDatabase.load();
+        JSONObject second = FileDatabase.load();
+
+        assertSame(first, second);
+        assertEquals(hits + 2, FileDatabase.getCacheHits());
+        assertEquals(misses, FileDatabase.getCacheMisses());
+    }
+
+    @Test
+    void testExternalChangeReloadsFile() throws IOException {
+        FileDatabase.load();
+        long misses = FileDatabase.getCacheMisses();
+
+        Files.writeString(Paths.get(TEST_PATH),
+                "{\"users\":[],\"books\":[],\"loans\":[],\"edited\":true}");
+
+        JSONObject db = FileDatabase.load();
+
+        assertTrue(db.getBoolean("edited"));
+        assertEquals(misses + 1, FileDatabase.getCacheMisses());
+    }
+
+    @Test
+    void testJournalModeAppendsWithoutRewritingSnapshot() throws IOException {
+        FileDatabase.useJournal(true);
+
+        JSONObject db = FileDatabase.load();
+        JSONObject book = new JSONObject().put("isbn", "77").put("quantity", 3);
+        db.getJSONArray("books").put(book);
+        String snapshotBefore = Files.readString(Paths.get(TEST_PATH));
+
+        FileDatabase.saveRecord(db, "books", book);
+
+        assertEquals(snapshotBefore, Files.readString(Paths.get(TEST_PATH)));
+        assertEquals(1, FileDatabase.getJournalEntries());
+
+        // a fresh load must replay the journal on top of the snapshot
+        FileDatabase.invalidateCache();
+        JSONObject reloaded = FileDatabase.load();
+        assertEquals(3, reloaded.getJSONArray("books").getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    void testCheckpointFoldsJournalIntoSnapshot() {
+        FileDatabase.useJournal(true);
+
+        JSONObject db = FileDatabase.load();
+        JSONObject user = new JSONObject().put("username", "sara");
+        db.getJSONArray("users").put(user);
+        FileDatabase.saveRecord(db, "users", user);
+
+        db.getJSONArray("users").remove(0);
+        FileDatabase.deleteRecord(db, "users", user);
+        FileDatabase.checkpoint();
+
+        assertEquals(0, FileDatabase.getJournalEntries());
+        assertFalse(Files.exists(Paths.get(TEST_PATH + ".journal")));
+
+        FileDatabase.invalidateCache();
+        assertEquals(0, FileDatabase.load().getJSONArray("users").length());
+    }
+
+    @Test
+    void testConcurrentSavesShareOneWrite() throws Exception {
+        FileDatabase.setGroupCommitWindow(50);
+        try {
+            JSONObject db = FileDatabase.load();
+            long flushesBefore = FileDatabase.getFlushCount();
+            long savesBefore = FileDatabase.getFlushedSaveCount();
+
+            Thread[] savers = new Thread[4];
+            for (int i = 0; i < savers.length; i++) {
+                savers[i] = new Thread(() -> FileDatabase.save(db));
+                savers[i].start();
+            }
+            for (Thread t : savers) t.join();
+
+            assertEquals(savesBefore + 4, FileDatabase.getFlushedSaveCount());
+            assertTrue(FileDatabase.getFlushCount() - flushesBefore < 4);
+        } finally {
+            FileDatabase.setGroupCommitWindow(2);
+        }
+    }
+
+    @Test
+    void testSnapshotIsCompactByDefault() throws IOException {
+        FileDatabase.save(FileDatabase.load().put("testValue", 1));
+
+        assertFalse(Files.readString(Paths.get(TEST_PATH)).contains("\n"));
+    }
+
+    @Test
+    void testPrettyFileIsLoadedTransparently() throws IOException {
+        Files.writeString(Paths.get(TEST_PATH),
+                new JSONObject().put("users", new JSONArray()).put("books", new JSONArray())
+                        .put("loans", new JSONArray()).put("testValue", 9).toString(4));
+
+        assertEquals(9, FileDatabase.load().getInt("testValue"));
+    }
+
+    @Test
+    void testExportPrettyWritesIndentedCopy() throws IOException {
+        FileDatabase.save(FileDatabase.load().put("testValue", 5));
+
+        FileDatabase.exportPretty(EXPORT_PATH);
+
+        String exported = Files.readString(Paths.get(EXPORT_PATH));
+        assertTrue(exported.contains("\n    \""));
+        assertEquals(5, new JSONObject(exported).getInt("testValue"));
+    }
+
+    @Test
+    void testExportPrettyWorksInsideTransaction() throws IOException {
+        addBook("1", 2);
+
+        FileDatabase.runInTransaction(db -> {
+            FileDatabase.exportPretty(EXPORT_PATH);
+            return null;
+        });
+
+        JSONObject exported = new JSONObject(Files.readString(Paths.get(EXPORT_PATH)));
+        assertEquals(1, exported.getJSONArray("books").length());
+    }
+
+    @Test
+    void testCollectionsAreStoredInSegments() throws IOException {
+        JSONObject db = FileDatabase.load();
+        JSONObject book = new JSONObject().put("isbn", "1").put("title", "Java");
+        db.getJSONArray("books").put(book);
+        String usersBefore = Files.readString(Paths.get(segmentPath("users")));
+
+        FileDatabase.saveRecord(db, "books", book);
+
+        JSONArray books = new JSONArray(Files.readString(Paths.get(segmentPath("books"))));
+        assertEquals("Java", books.getJSONObject(0).getString("title"));
+        assertEquals(usersBefore, Files.readString(Paths.get(segmentPath("users"))));
+        assertFalse(new JSONObject(Files.readString(Paths.get(TEST_PATH))).has("books"));
+    }
+
+    @Test
+    void testSingleFileDatabaseIsSplitIntoSegments() throws IOException {
+        JSONObject legacy = new JSONObject();
+        legacy.put("users", new JSONArray().put(new JSONObject().put("username", "sara")));
+        legacy.put("books", new JSONArray());
+        legacy.put("loans", new JSONArray());
+        Files.writeString(Paths.get(TEST_PATH), legacy.toString(4));
+
+        JSONObject db = FileDatabase.load();
+
+        assertEquals("sara", db.getJSONArray("users").getJSONObject(0).getString("username"));
+        assertTrue(db.has("cds"));
+        assertFalse(new JSONObject(Files.readString(Paths.get(TEST_PATH))).has("users"));
+        assertEquals(1, new JSONArray(Files.readString(Paths.get(segmentPath("users")))).length());
+    }
+
+    @Test
+    void testChangedSegmentIsReloadedAlone() throws IOException {
+        JSONObject db = FileDatabase.load();
+        JSONArray users = db.getJSONArray("users");
+
+        Files.writeString(Paths.get(segmentPath("books")), "[{\"isbn\":\"9\"}]");
+        JSONObject reloaded = FileDatabase.load();
+
+        assertSame(users, reloaded.getJSONArray("users"));
+        assertEquals("9", reloaded.getJSONArray("books").getJSONObject(0).getString("isbn"));
+    }
+
+    @Test
+    void testChangedSegmentLeavesHeldVersionUnchanged() throws IOException {
+        addBook("1", 2);
+        JSONObject held = FileDatabase.load();
+        JSONArray books = held.getJSONArray("books");
+
+        Files.writeString(Paths.get(segmentPath("books")), "[{\"isbn\":\"9\"}]");
+        JSONObject reloaded = FileDatabase.load();
+
+        assertNotSame(held, reloaded);
+        assertSame(books, held.getJSONArray("books"));
+        assertEquals("1", held.getJSONArray("books").getJSONObject(0).getString("isbn"));
+        assertEquals("9", reloaded.getJSONArray("books").getJSONObject(0).getString("isbn"));
+    }
+
+    @Test
+    void testCollectionsAreLoadedOnFirstAccess() {
+        FileDatabase.invalidateCache();
+
+        JSONObject db = FileDatabase.load();
+        db.getJSONArray("users");
+
+        assertTrue(FileDatabase.isLoaded("users"));
+        assertFalse(FileDatabase.isLoaded("books"));
+        assertTrue(db.has("books"));
+        assertEquals(0, FileDatabase.loadCollection("books").length());
+        assertTrue(FileDatabase.isLoaded("books"));
+    }
+
+    @Test
+    void testUnloadedCollectionIsNotRewritten() throws IOException {
+        Files.writeString(Paths.get(segmentPath("books")), "[{\"isbn\":\"7\"}]");
+        FileDatabase.invalidateCache();
+
+        JSONObject db = FileDatabase.load();
+        JSONObject user = new JSONObject().put("username", "ali");
+        db.getJSONArray("users").put(user);
+        FileDatabase.save(db);
+
+        assertFalse(FileDatabase.isLoaded("books"));
+        assertEquals("[{\"isbn\":\"7\"}]", Files.readString(Paths.get(segmentPath("books"))));
+    }
+
+    @Test
+    void testJournalIsReplayedIntoLazilyLoadedCollection() {
+        FileDatabase.useJournal(true);
+        JSONObject db = FileDatabase.load();
+        JSONObject book = new JSONObject().put("isbn", "1").put("title", "Java");
+        db.getJSONArray("books").put(book);
+        FileDatabase.saveRecord(db, "books", book);
+
+        FileDatabase.invalidateCache();
+        JSONArray books = FileDatabase.loadCollection("books");
+
+        assertEquals(1, books.length());
+        assertEquals("Java", books.getJSONObject(0).getString("title"));
+    }
+
+    @Test
+    void testBinarySegmentsReplaceJsonSegments() throws IOException {
+        FileDatabase.useBinarySegments(true);
+        JSONObject db = FileDatabase.load();
+        JSONObject book = new JSONObject().put("isbn", "1").put("title", "Java");
+        db.getJSONArray("books").put(book);
+        FileDatabase.save(db);
+
+        assertFalse(Files.exists(Paths.get(segmentPath("books"))));
+        assertTrue(Files.exists(Paths.get(segmentPath("books").replace(".json", ".bin"))));
+        assertEquals(Set.of("version", "schemaVersion"), new JSONObject(Files.readString(Paths.get(TEST_PATH))).keySet());
+
+        FileDatabase.invalidateCache();
+        assertTrue(book.similar(FileDatabase.loadCollection("books").getJSONObject(0)));
+    }
+
+    @Test
+    void testSwitchingBackToJsonSegments() throws IOException {
+        FileDatabase.useBinarySegments(true);
+        FileDatabase.save(FileDatabase.load());
+        FileDatabase.useBinarySegments(false);
+
+        JSONObject db = FileDatabase.load();
+        db.getJSONArray("users").put(new JSONObject().put("username", "ali"));
+        FileDatabase.save(db);
+
+        assertFalse(Files.exists(Paths.get(segmentPath("users").replace(".json", ".bin"))));
+        assertEquals(1, new JSONArray(Files.readString(Paths.get(segmentPath("users")))).length());
+    }
+
+    private static JSONObject addBook(String isbn, int quantity) {
+        JSONObject db = FileDatabase.load();
+        JSONObject book = new JSONObject().put("isbn", isbn).put("quantity", quantity);
+        db.getJSONArray("books").put(book);
+        FileDatabase.saveRecord(db, "books", book);
+        return book;
+    }
+
+    @Test
+    void testConcurrentTransactionsDoNotOversell() throws Exception {
+        addBook("1", 3);
+        AtomicInteger borrowed = new AtomicInteger();
+
+        Thread[] borrowers = new Thread[8];
+        for (int i = 0; i < borrowers.length; i++) {
+            borrowers[i] = new Thread(() -> FileDatabase.runInTransaction(db -> {
+                JSONObject book = db.getJSONArray("books").getJSONObject(0);
+                int qty = book.getInt("quantity");
+                if (qty == 0) return false;
+
+                Thread.yield();
+                book.put("quantity", qty - 1);
+                FileDatabase.saveRecord(db, "books", book);
+                return borrowed.incrementAndGet() > 0;
+            }));
+            borrowers[i].start();
+        }
+        for (Thread t : borrowers) t.join();
+
+        assertEquals(3, borrowed.get());
+        FileDatabase.invalidateCache();
+        assertEquals(0, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    void testTransactionCommitsOnce() {
+        long flushesBefore = FileDatabase.getFlushCount();
+
+        FileDatabase.runInTransaction(db -> {
+            for (int i = 0; i < 3; i++) {
+                JSONObject book = new JSONObject().put("isbn", String.valueOf(i));
+                db.getJSONArray("books").put(book);
+                FileDatabase.saveRecord(db, "books", book);
+            }
+            return null;
+        });
+
+        assertEquals(flushesBefore + 1, FileDatabase.getFlushCount());
+        FileDatabase.invalidateCache();
+        assertEquals(3, FileDatabase.loadCollection("books").length());
+    }
+
+    @Test
+    void testJournaledTransactionAppendsOnce() {
+        FileDatabase.useJournal(true);
+
+        FileDatabase.runInTransaction(db -> {
+            JSONObject user = new JSONObject().put("username", "ali");
+            JSONObject book = new JSONObject().put("isbn", "1");
+            db.getJSONArray("users").put(user);
+            db.getJSONArray("books").put(book);
+            FileDatabase.saveRecord(db, "users", user);
+            FileDatabase.saveRecord(db, "books", book);
+            return null;
+        });
+
+        assertEquals(2, FileDatabase.getJournalEntries());
+        FileDatabase.invalidateCache();
+        assertEquals(1, FileDatabase.loadCollection("users").length());
+        assertEquals(1, FileDatabase.loadCollection("books").length());
+    }
+
+    @Test
+    void testSegmentWriteInJournalModeKeepsNewerRecords() {
+        FileDatabase.useJournal(true);
+
+        FileDatabase.runInTransaction(db -> {
+            JSONObject book = new JSONObject().put("isbn", "1").put("quantity", 5);
+            db.getJSONArray("books").put(book);
+            FileDatabase.saveRecord(db, "books", book);
+            return null;
+        });
+        assertEquals(1, FileDatabase.getJournalEntries());
+
+        // books can be journaled but loans cannot, so this writes segments
+        FileDatabase.runInTransaction(db -> {
+            JSONObject book = db.getJSONArray("books").getJSONObject(0);
+            book.put("quantity", 7);
+            FileDatabase.saveRecord(db, "books", book);
+            db.getJSONArray("loans").put(new JSONObject().put("isbn", "1"));
+            FileDatabase.saveCollection(db, "loans");
+            return null;
+        });
+
+        assertEquals(0, FileDatabase.getJournalEntries());
+        FileDatabase.invalidateCache();
+        assertEquals(7, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+        assertEquals(1, FileDatabase.loadCollection("loans").length());
+    }
+
+    @Test
+    void testFailedTransactionIsRolledBack() {
+        addBook("1", 2);
+
+        assertThrows(IllegalStateException.class, () -> FileDatabase.runInTransaction(db -> {
+            JSONObject book = db.getJSONArray("books").getJSONObject(0);
+            book.put("quantity", 1);
+            FileDatabase.saveRecord(db, "books", book);
+            throw new IllegalStateException("payment declined");
+        }));
+
+        assertEquals(2, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    void testNestedTransactionJoinsOuter() {
+        long flushesBefore = FileDatabase.getFlushCount();
+
+        int result = FileDatabase.runInTransaction(db -> {
+            JSONObject book = new JSONObject().put("isbn", "1");
+            db.getJSONArray("books").put(book);
+            FileDatabase.saveRecord(db, "books", book);
+            return FileDatabase.runInTransaction(inner -> inner.getJSONArray("books").length());
+        });
+
+        assertEquals(1, result);
+        assertEquals(flushesBefore + 1, FileDatabase.getFlushCount());
+    }
+
+    @Test
+    void testEveryCommitIncreasesVersion() throws IOException {
+        FileDatabase.useJournal(true);
+        long before = FileDatabase.getVersion();
+
+        addBook("1", 1);
+        FileDatabase.checkpoint();
+
+        assertEquals(before + 2, FileDatabase.getVersion());
+        assertEquals(before + 2, new JSONObject(Files.readString(Paths.get(TEST_PATH))).getLong("version"));
+        assertFalse(FileDatabase.load().has("version"));
+    }
+
+    @Test
+    void testDecodedModelsSurviveUnrelatedCommits() {
+        FileDatabase.useJournal(true);
+        addBook("1", 1);
+        List<?> users = RecordCodec.users(FileDatabase.load());
+
+        FileDatabase.checkpoint();
+        assertSame(users, RecordCodec.users(FileDatabase.load()));
+
+        addBook("2", 1);
+        assertSame(users, RecordCodec.users(FileDatabase.load()));
+
+        FileDatabase.runInTransaction(db -> {
+            JSONObject user = new JSONObject().put("username", "ali").put("password", "1").put("role", "USER");
+            db.getJSONArray("users").put(user);
+            FileDatabase.saveRecord(db, "users", user);
+            return null;
+        });
+        assertEquals(1, RecordCodec.users(FileDatabase.load()).size());
+    }
+
+    @Test
+    void testStaleWriteIsRejected() throws IOException {
+        FileDatabase.useProcessLock(true);
+        JSONObject db = FileDatabase.load();
+        long read = FileDatabase.getVersion();
+
+        // another process commits in the meantime
+        Files.writeString(Paths.get(TEST_PATH), "{\"version\":" + (read + 5) + "}");
+
+        JSONObject book = new JSONObject().put("isbn", "1");
+        db.getJSONArray("books").put(book);
+        WriteConflictException e = assertThrows(WriteConflictException.class,
+                () -> FileDatabase.saveRecord(db, "books", book));
+
+        assertEquals(read, e.getReadVersion());
+        assertEquals(read + 5, e.getCurrentVersion());
+        assertEquals(0, FileDatabase.loadCollection("books").length());
+        assertTrue(Files.exists(Paths.get(TEST_PATH.replace(".json", ".lock"))));
+    }
+
+    @Test
+    void testConflictingTransactionIsRetried() {
+        FileDatabase.useProcessLock(true);
+        addBook("1", 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        boolean borrowed = FileDatabase.runInTransaction(db -> {
+            if (attempts.incrementAndGet() == 1) {
+                // another process borrows the last copy first
+                try {
+                    Files.writeString(Paths.get(segmentPath("books")), "[{\"isbn\":\"1\",\"quantity\":0}]");
+                    Files.writeString(Paths.get(TEST_PATH), "{\"version\":" + (FileDatabase.getVersion() + 1) + "}");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            JSONObject book = db.getJSONArray("books").getJSONObject(0);
+            if (book.getInt("quantity") == 0) return false;
+            book.put("quantity", 0);
+            FileDatabase.saveRecord(db, "books", book);
+            return true;
+        });
+
+        assertEquals(2, attempts.get());
+        assertFalse(borrowed);
+    }
+
+    @Test
+    void testReaderKeepsItsVersion() {
+        addBook("1", 2);
+        JSONObject pinned = FileDatabase.load();
+        JSONObject book = pinned.getJSONArray("books").getJSONObject(0);
+
+        FileDatabase.runInTransaction(db -> {
+            JSONObject b = db.getJSONArray("books").getJSONObject(0);
+            b.put("quantity", 1);
+            db.getJSONArray("books").put(new JSONObject().put("isbn", "2"));
+            FileDatabase.saveRecords(db, "books", List.of(b, db.getJSONArray("books").getJSONObject(1)));
+            return null;
+        });
+
+        assertEquals(2, book.getInt("quantity"));
+        assertEquals(1, pinned.getJSONArray("books").length());
+
+        JSONObject latest = FileDatabase.load();
+        assertNotSame(pinned, latest);
+        assertEquals(1, latest.getJSONArray("books").getJSONObject(0).getInt("quantity"));
+        assertEquals(2, latest.getJSONArray("books").length());
+    }
+
+    @Test
+    void testUncommittedChangesAreInvisible() {
+        addBook("1", 2);
+
+        int seen = FileDatabase.runInTransaction(db -> {
+            JSONObject b = db.getJSONArray("books").getJSONObject(0);
+            b.put("quantity", 0);
+            FileDatabase.saveRecord(db, "books", b);
+
+            int[] quantity = new int[1];
+            Thread reader = new Thread(() -> quantity[0] =
+                    FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+            reader.start();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return quantity[0];
+        });
+
+        assertEquals(2, seen);
+        assertEquals(0, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    void testUnsavedTransactionChangesAreDiscarded() {
+        addBook("1", 2);
+
+        FileDatabase.runInTransaction(db -> db.getJSONArray("books").getJSONObject(0).put("quantity", 0));
+
+        assertEquals(2, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    void testCheckpointIsDueOnceJournalIsTooOld() {
+        FileDatabase.useJournal(true);
+        addBook("1", 1);
+
+        assertFalse(FileDatabase.checkpointIfDue());
+        assertEquals(1, FileDatabase.getJournalEntries());
+        assertTrue(FileDatabase.getJournalBytes() > 0);
+
+        FileDatabase.setCheckpointAge(0);
+        assertTrue(FileDatabase.checkpointIfDue());
+        assertEquals(0, FileDatabase.getJournalEntries());
+        assertEquals(0, FileDatabase.getJournalBytes());
+        assertNotNull(FileDatabase.getLastCheckpointTime());
+    }
+
+    @Test
+    void testBackgroundThreadCheckpointsLargeJournal() throws InterruptedException {
+        FileDatabase.useJournal(true);
+        FileDatabase.setCheckpointBytes(1);
+        FileDatabase.useBackgroundCheckpoints(true);
+
+        addBook("1", 1);
+        for (int i = 0; i < 50 && FileDatabase.getJournalEntries() > 0; i++) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(0, FileDatabase.getJournalEntries());
+        assertFalse(Files.exists(Paths.get(TEST_PATH + ".journal")));
+        FileDatabase.invalidateCache();
+        assertEquals(1, FileDatabase.loadCollection("books").length());
+    }
+
+    @Test
+    void testTornJournalTailIsCutBeforeNextAppend() throws IOException {
+        FileDatabase.useJournal(true);
+        addBook("1", 1);
+        Files.writeString(Paths.get(TEST_PATH + ".journal"), "12345678 {\"op\"", StandardOpenOption.APPEND);
+
+        FileDatabase.invalidateCache();
+        assertEquals(1, FileDatabase.loadCollection("books").length());
+        addBook("2", 1);
+
+        FileDatabase.invalidateCache();
+        assertEquals(2, FileDatabase.loadCollection("books").length());
+        assertEquals(2, FileDatabase.getJournalEntries());
+    }
+
+    @Test
+    void testCompressedSegmentsAreReadBack() throws IOException {
+        FileDatabase.useCompressedSegments(true);
+        FileDatabase.setCompressionLevel(9);
+        addBook("1", 4);
+
+        byte[] stored = Files.readAllBytes(Paths.get(segmentPath("books")));
+        assertEquals((byte) 0x1f, stored[0]);
+        assertEquals((byte) 0x8b, stored[1]);
+
+        FileDatabase.invalidateCache();
+        assertEquals(4, FileDatabase.loadCollection("books").getJSONObject(0).getInt("quantity"));
+        assertThrows(IllegalArgumentException.class, () -> FileDatabase.setCompressionLevel(10));
+    }
+
+    @Test
+    void testWriteBehindSaveReturnsBeforeWrite() throws IOException {
+        FileDatabase.useWriteBehind(true);
+        FileDatabase.setWriteBehindWindow(60_000);
+        long flushes = FileDatabase.getFlushCount();
+
+        addBook("1", 2);
+
+        assertEquals(flushes, FileDatabase.getFlushCount());
+        assertEquals(1, FileDatabase.getUnflushedSaves());
+        assertTrue(FileDatabase.getFlushLag() > 0);
+        assertFalse(Files.readString(Paths.get(segmentPath("books"))).contains("\"isbn\""));
+        assertEquals(1, FileDatabase.loadCollection("books").length());
+
+        FileDatabase.flushPending();
+
+        assertEquals(0, FileDatabase.getFlushLag());
+        assertEquals(0, FileDatabase.getUnflushedSaves());
+        assertTrue(Files.readString(Paths.get(segmentPath("books"))).contains("\"isbn\""));
+    }
+
+    @Test
+    void testWriteBehindWritesWithinWindow() throws Exception {
+        FileDatabase.useWriteBehind(true);
+        FileDatabase.setWriteBehindWindow(20);
+
+        addBook("1", 2);
+
+        awaitFlushed();
+        FileDatabase.invalidateCache();
+        assertEquals(1, FileDatabase.loadCollection("books").length());
+    }
+
+    @Test
+    void testWriteBehindLimitWritesBeforeWindow() throws Exception {
+        FileDatabase.useWriteBehind(true);
+        FileDatabase.setWriteBehindWindow(60_000);
+        FileDatabase.setWriteBehindLimit(3);
+
+        addBook("1", 1);
+        addBook("2", 1);
+        addBook("3", 1);
+
+        awaitFlushed();
+        assertTrue(Files.readString(Paths.get(segmentPath("books"))).contains("\"3\""));
+    }
+
+    @Test
+    void testProcessLockKeepsWriteBehindSavesSynchronous() throws IOException {
+        FileDatabase.useWriteBehind(true);
+        FileDatabase.setWriteBehindWindow(60_000);
+        FileDatabase.useProcessLock(true);
+
+        addBook("1", 2);
+
+        assertEquals(0, FileDatabase.getUnflushedSaves());
+        assertTrue(Files.readString(Paths.get(segmentPath("books"))).contains("\"isbn\""));
+    }
+
+    private static void awaitFlushed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (FileDatabase.getFlushLag() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, FileDatabase.getFlushLag());
+    }
+
+    @Test
+    void testOldSchemaIsMigratedOnceOnLoad() throws IOException {
+        Files.writeString(Paths.get(TEST_PATH), "{\"version\":3}");
+        Files.writeString(Paths.get(segmentPath("books")),
+                "[{\"isbn\":\"1\",\"borrowed\":true,\"dueDate\":\"2025-1-3\"}]");
+        FileDatabase.invalidateCache();
+
+        assertEquals(LocalDate.of(2025, 1, 3).toEpochDay(),
+                FileDatabase.loadCollection("books").getJSONObject(0).getLong("dueDate"));
+        assertEquals(SchemaMigrations.CURRENT, FileDatabase.getSchemaVersion());
+        assertTrue(Files.readString(Paths.get(segmentPath("books")))
+                .contains("\"dueDate\":" + LocalDate.of(2025, 1, 3).toEpochDay()));
+        assertEquals(SchemaMigrations.CURRENT,
+                new JSONObject(Files.readString(Paths.get(TEST_PATH))).getInt("schemaVersion"));
+
+        long flushes = FileDatabase.getFlushCount();
+        FileDatabase.invalidateCache();
+        FileDatabase.loadCollection("books");
+        assertEquals(flushes, FileDatabase.getFlushCount());
+    }
+
+    @Test
+    void testReadersDuringMigrationSeeMigratedRecords() throws Exception {
+        Files.writeString(Paths.get(TEST_PATH), "{\"version\":3}");
+        Files.writeString(Paths.get(segmentPath("books")),
+                "[{\"isbn\":\"1\",\"borrowed\":true,\"dueDate\":\"2025-1-3\"}]");
+        FileDatabase.invalidateCache();
+
+        AtomicInteger oldFormat = new AtomicInteger();
+        Thread[] readers = new Thread[8];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                for (int n = 0; n < 200; n++) {
+                    Object due = FileDatabase.loadCollection("books").getJSONObject(0).get("dueDate");
+                    if (!(due instanceof Number)) oldFormat.incrementAndGet();
+                }
+            });
+            readers[i].start();
+        }
+        for (Thread t : readers) t.join();
+
+        assertEquals(0, oldFormat.get());
+    }
+
+    @Test
+    void testSnapshotIsCompleteAndUnchangedByLaterCommits() {
+        addBook("1", 2);
+        FileDatabase.invalidateCache();
+
+        JSONObject snapshot = FileDatabase.loadSnapshot();
+        assertTrue(FileDatabase.isLoaded("books"));
+        assertTrue(FileDatabase.isLoaded("users"));
+
+        FileDatabase.runInTransaction(db -> addBook("2", 1));
+
+        assertEquals(1, snapshot.getJSONArray("books").length());
+        assertEquals(2, FileDatabase.loadCollection("books").length());
+    }
 }
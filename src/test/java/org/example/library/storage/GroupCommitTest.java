@@ -0,0 +1,69 @@
+package org.example.library.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the GroupCommit class.
+ *
+ * Verifies that concurrent save requests share physical writes
+ * and that every request is covered by exactly one flush.
+ */
+class GroupCommitTest {
+
+    @Test
+    void testSingleSaveFlushesOnce() throws Exception {
+        GroupCommit commit = new GroupCommit(0);
+        AtomicInteger writes = new AtomicInteger();
+
+        commit.await(commit.enqueue(), writes::incrementAndGet);
+
+        assertEquals(1, writes.get());
+        assertEquals(1, commit.lastBatch());
+        assertEquals(1, commit.flushes());
+    }
+
+    @Test
+    void testConcurrentSavesAreCoalesced() throws Exception {
+        GroupCommit commit = new GroupCommit(50);
+        AtomicInteger writes = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    commit.await(commit.enqueue(), writes::incrementAndGet);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+
+        assertEquals(8, commit.saves());
+        assertTrue(writes.get() < 8);
+        assertEquals(writes.get(), commit.flushes());
+    }
+
+    @Test
+    void testFailedFlushIsRetriedByNextSave() throws Exception {
+        GroupCommit commit = new GroupCommit(0);
+        long ticket = commit.enqueue();
+
+        assertThrows(IllegalStateException.class,
+                () -> commit.await(ticket, () -> { throw new IllegalStateException("disk full"); }));
+
+        AtomicInteger writes = new AtomicInteger();
+        commit.await(ticket, writes::incrementAndGet);
+
+        assertEquals(1, writes.get());
+        assertEquals(1, commit.saves());
+    }
+}
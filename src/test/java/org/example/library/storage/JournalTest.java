@@ -0,0 +1,156 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Journal class.
+ *
+ * Verifies that appended entries are replayed on top of a snapshot
+ * and that a half-written last line is ignored.
+ */
+class JournalTest {
+
+    private static final Path JOURNAL_PATH =
+            Paths.get(System.getProperty("user.dir") + "/test_journal.json.journal");
+
+    private Journal journal;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.deleteIfExists(JOURNAL_PATH);
+        journal = new Journal(JOURNAL_PATH);
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        Files.deleteIfExists(JOURNAL_PATH);
+    }
+
+    private static JSONObject book(String isbn, int quantity) {
+        JSONObject b = new JSONObject();
+        b.put("isbn", isbn);
+        b.put("quantity", quantity);
+        return b;
+    }
+
+    private static JSONObject snapshot() {
+        JSONObject db = new JSONObject();
+        db.put("books", new JSONArray().put(book("1", 5)).put(book("2", 1)));
+        db.put("users", new JSONArray().put(new JSONObject().put("username", "sara")));
+        return db;
+    }
+
+    @Test
+    void testReplayAppliesPutAndDelete() throws Exception {
+        journal.append(List.of(
+                Journal.put("books", book("1", 4)),
+                Journal.put("books", book("3", 7)),
+                Journal.delete("users", "sara")
+        ));
+
+        JSONObject db = snapshot();
+        int applied = journal.replay(db);
+
+        JSONArray books = db.getJSONArray("books");
+        assertEquals(3, applied);
+        assertEquals(3, books.length());
+        assertEquals(4, books.getJSONObject(0).getInt("quantity"));
+        assertEquals("3", books.getJSONObject(2).getString("isbn"));
+        assertEquals(0, db.getJSONArray("users").length());
+    }
+
+    @Test
+    void testReplayUpdatesFirstRecordWithDuplicateKey() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 9))));
+
+        JSONObject db = snapshot();
+        db.getJSONArray("books").put(book("1", 8));
+        journal.replay(db);
+
+        // the same record RecordIndex.find returns
+        JSONArray books = db.getJSONArray("books");
+        assertEquals(9, books.getJSONObject(0).getInt("quantity"));
+        assertEquals(8, books.getJSONObject(2).getInt("quantity"));
+        assertSame(books.getJSONObject(0), RecordIndex.find(db, "books", "1"));
+    }
+
+    @Test
+    void testReplayStopsAtTornLine() throws Exception {
+        journal.append(List.of(Journal.put("books", book("2", 0))));
+        Files.writeString(JOURNAL_PATH, "{\"op\":\"put\",\"coll", StandardOpenOption.APPEND);
+
+        JSONObject db = snapshot();
+
+        assertEquals(1, journal.replay(db));
+        assertEquals(0, db.getJSONArray("books").getJSONObject(1).getInt("quantity"));
+    }
+
+    @Test
+    void testTruncateRemovesEntries() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 0))));
+        journal.truncate();
+
+        assertEquals(0, journal.replay(snapshot()));
+    }
+
+    @Test
+    void testDropPrefixKeepsLaterEntries() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 1))));
+        long covered = journal.size();
+        journal.append(List.of(Journal.put("books", book("2", 2))));
+
+        journal.dropPrefix(covered);
+
+        assertEquals(1, journal.count());
+        JSONObject db = new JSONObject().put("books", new JSONArray());
+        journal.replay(db);
+        assertEquals("2", db.getJSONArray("books").getJSONObject(0).getString("isbn"));
+    }
+
+    @Test
+    void testEntriesCarryChecksum() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 1))));
+
+        assertTrue(Files.readString(JOURNAL_PATH).matches("[0-9a-f]{8} \\{.*\\}\n"));
+    }
+
+    @Test
+    void testReplayStopsAtDamagedEntry() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 1))));
+        journal.append(List.of(Journal.put("books", book("2", 2))));
+        Files.writeString(JOURNAL_PATH, Files.readString(JOURNAL_PATH).replaceFirst("\"1\"", "\"7\""));
+
+        assertEquals(0, journal.count());
+        assertTrue(journal.scan().damaged());
+    }
+
+    @Test
+    void testRecoverCutsTornTail() throws Exception {
+        journal.append(List.of(Journal.put("books", book("1", 1))));
+        Files.writeString(JOURNAL_PATH, "0badc0de {\"op\":\"pu", StandardOpenOption.APPEND);
+
+        assertEquals(18, journal.recover());
+        journal.append(List.of(Journal.put("books", book("2", 2))));
+
+        assertEquals(2, journal.count());
+        assertFalse(journal.scan().damaged());
+    }
+
+    @Test
+    void testEntriesWithoutChecksumAreAccepted() throws Exception {
+        Files.writeString(JOURNAL_PATH, Journal.put("books", book("1", 1)) + "\n");
+
+        JSONObject db = snapshot();
+        assertEquals(1, journal.replay(db));
+    }
+}
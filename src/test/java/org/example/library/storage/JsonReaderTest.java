@@ -0,0 +1,101 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link JsonReader}.
+ */
+class JsonReaderTest {
+
+    private static final Path TEST_FILE =
+            Paths.get(System.getProperty("user.dir"), "test_library_reader.json");
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+    }
+
+    @Test
+    void testReadsSameValuesAsJsonArray() throws IOException {
+        String json = "[{\"title\":\"Clean \\\"Code\\\"\",\"quantity\":3,\"fine\":2.5,"
+                + "\"available\":true,\"dueDate\":null,\"tags\":[\"a\",\"\\u00e9\"]}, {}]";
+        Files.writeString(TEST_FILE, json);
+
+        JSONArray read = JsonReader.readArray(TEST_FILE);
+
+        assertTrue(new JSONArray(json).similar(read));
+        assertEquals(3, read.getJSONObject(0).getInt("quantity"));
+        assertEquals("Clean \"Code\"", read.getJSONObject(0).getString("title"));
+        assertTrue(read.getJSONObject(0).isNull("dueDate"));
+    }
+
+    @Test
+    void testReadsValuesLongerThanTheBuffer() throws IOException {
+        JSONArray books = new JSONArray();
+        for (int i = 0; i < 2000; i++) {
+            books.put(new JSONObject().put("isbn", String.valueOf(i)).put("title", "Book title " + i));
+        }
+        Files.writeString(TEST_FILE, books.toString(4));
+
+        assertTrue(books.similar(JsonReader.readArray(TEST_FILE)));
+    }
+
+    @Test
+    void testReadsObject() throws IOException {
+        Files.writeString(TEST_FILE, " {\"version\": 2} \n");
+
+        assertEquals(2, JsonReader.readObject(TEST_FILE).getInt("version"));
+    }
+
+    @Test
+    void testElementsAreDeliveredOneByOne() throws IOException {
+        List<Object> seen = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(new StringReader("[1, \"two\", [3]]"))) {
+            reader.forEachElement(seen::add);
+        }
+
+        assertEquals(3, seen.size());
+        assertEquals("two", seen.get(1));
+    }
+
+    @Test
+    void testMalformedInputIsRejected() throws IOException {
+        Files.writeString(TEST_FILE, "[{\"isbn\": \"1\"");
+
+        assertThrows(JSONException.class, () -> JsonReader.readArray(TEST_FILE));
+    }
+
+    @Test
+    void testTrailingContentIsRejected() throws IOException {
+        Files.writeString(TEST_FILE, "[] []");
+
+        assertThrows(JSONException.class, () -> JsonReader.readArray(TEST_FILE));
+    }
+
+    @Test
+    void testReadsCompressedFile() throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(TEST_FILE))) {
+            out.write("[{\"isbn\": \"1\"}]".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("1", JsonReader.readArray(TEST_FILE).getJSONObject(0).getString("isbn"));
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LazyDatabase}.
+ */
+class LazyDatabaseTest {
+
+    private final List<String> loaded = new ArrayList<>();
+
+    private LazyDatabase database() {
+        JSONObject fields = new JSONObject().put("name", "library");
+        return new LazyDatabase(fields, List.of("users", "books"), collection -> {
+            loaded.add(collection);
+            return new JSONArray().put(collection);
+        }, this);
+    }
+
+    @Test
+    void testCollectionIsLoadedOnce() {
+        LazyDatabase db = database();
+
+        assertEquals("books", db.getJSONArray("books").getString(0));
+        db.getJSONArray("books");
+
+        assertEquals(List.of("books"), loaded);
+        assertFalse(db.isLoaded("users"));
+        assertEquals("library", db.getString("name"));
+    }
+
+    @Test
+    void testHasDoesNotLoad() {
+        LazyDatabase db = database();
+
+        assertTrue(db.has("users"));
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void testPutReplacesUnloadedCollection() {
+        LazyDatabase db = database();
+
+        db.put("users", new JSONArray());
+
+        assertEquals(0, db.getJSONArray("users").length());
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void testReloadingReadsAgainInNewVersionOnly() {
+        LazyDatabase db = database();
+        JSONArray users = db.getJSONArray("users");
+        JSONArray books = db.getJSONArray("books");
+
+        LazyDatabase reloaded = db.reloading(List.of("users"));
+        reloaded.getJSONArray("users");
+
+        assertEquals(List.of("users", "books", "users"), loaded);
+        assertSame(users, db.getJSONArray("users"));
+        assertSame(books, reloaded.getJSONArray("books"));
+    }
+
+    @Test
+    void testLoadAllLoadsRemainingCollections() {
+        LazyDatabase db = database();
+
+        db.loadAll();
+
+        assertTrue(db.isLoaded("users"));
+        assertTrue(db.isLoaded("books"));
+    }
+
+    @Test
+    void testCopyOnWriteLeavesOriginalUnchanged() {
+        LazyDatabase db = database();
+        db.getJSONArray("users");
+
+        LazyDatabase copy = db.copyOnWrite();
+        copy.getJSONArray("users").put("new");
+        copy.getJSONArray("books").put("new");
+
+        assertEquals(1, db.getJSONArray("users").length());
+        assertEquals(1, db.getJSONArray("books").length());
+        assertEquals(2, copy.getJSONArray("books").length());
+        // the copy read books through the original, not from disk again
+        assertEquals(List.of("users", "books"), loaded);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link OverdueRecords}.
+ */
+class OverdueRecordsTest {
+
+    private static final long TODAY = 20_000;
+
+    private static JSONObject book(String isbn, boolean borrowed, Object dueDate) {
+        return new JSONObject().put("isbn", isbn).put("borrowed", borrowed).put("dueDate", dueDate);
+    }
+
+    @Test
+    void testFindsBorrowedRecordsPastTheirDueDate() {
+        JSONObject db = new JSONObject().put("books", new JSONArray()
+                .put(book("1", true, TODAY - 3))
+                .put(book("2", true, TODAY))
+                .put(book("3", false, TODAY - 3))
+                .put(book("4", true, JSONObject.NULL))
+                .put(book("5", true, TODAY - 1)));
+
+        assertEquals(Map.of(0, "1", 4, "5"), OverdueRecords.latePositions(db, "books", TODAY));
+        assertEquals(3, OverdueRecords.daysLate(db.getJSONArray("books").getJSONObject(0), TODAY));
+    }
+
+    @Test
+    void testLateRecordIsFoundByKeyAfterItMoved() {
+        JSONObject late = book("5", true, TODAY - 1);
+        JSONObject db = new JSONObject().put("books", new JSONArray().put(late));
+
+        assertSame(late, OverdueRecords.lateRecord(db, "books", 0, "5"));
+        assertSame(late, OverdueRecords.lateRecord(db, "books", 4, "5"));
+        assertNull(OverdueRecords.lateRecord(db, "books", 0, "6"));
+    }
+}
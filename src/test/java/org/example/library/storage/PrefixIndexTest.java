@@ -0,0 +1,120 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PrefixIndex}.
+ */
+class PrefixIndexTest {
+
+    private static JSONObject book(String isbn, String title) {
+        return new JSONObject().put("isbn", isbn).put("title", title);
+    }
+
+    private LazyDatabase database(JSONObject... books) {
+        JSONArray records = new JSONArray();
+        for (JSONObject b : books) records.put(b);
+        return new LazyDatabase(new JSONObject(), List.of("books"), collection -> records, this);
+    }
+
+    @Test
+    void testCompletesInAlphabeticalOrder() {
+        LazyDatabase db = database(book("1", "Java Programming"), book("2", "Clean Code"),
+                book("3", "JavaScript"), book("4", "java  programming "), book("5", "Go"));
+
+        assertEquals(List.of("Java Programming", "JavaScript"),
+                PrefixIndex.complete(db, "books", "title", "JAV", 10));
+        assertEquals(List.of("Java Programming"), PrefixIndex.complete(db, "books", "title", "java ", 10));
+        assertEquals(List.of("Clean Code", "Go"), PrefixIndex.complete(db, "books", "title", "", 2));
+        assertEquals(List.of(), PrefixIndex.complete(db, "books", "title", "python", 10));
+    }
+
+    @Test
+    void testPicksUpAppendedRecords() {
+        LazyDatabase db = database(book("1", "Beta"), book("2", "Delta"));
+        assertEquals(List.of("Beta"), PrefixIndex.complete(db, "books", "title", "b", 10));
+
+        JSONArray books = db.getJSONArray("books");
+        books.put(book("3", "Alpha")).put(book("4", "Bravo")).put(book("5", "Echo"));
+
+        assertEquals(List.of("Alpha", "Beta", "Bravo", "Delta", "Echo"),
+                PrefixIndex.complete(db, "books", "title", "", 10));
+    }
+
+    @Test
+    void testRebuildsAfterRemoval() {
+        LazyDatabase db = database(book("1", "Beta"), book("2", "Bravo"));
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(db, "books", "title", "b", 10));
+
+        db.getJSONArray("books").remove(0);
+
+        assertEquals(List.of("Bravo"), PrefixIndex.complete(db, "books", "title", "b", 10));
+    }
+
+    @Test
+    void testCompletesRecordRenamedAndSaved() {
+        LazyDatabase db = database(book("1", "Beta"), book("2", "Bravo"), book("3", "beta "));
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(db, "books", "title", "b", 10));
+
+        JSONArray books = db.getJSONArray("books");
+        JSONObject first = books.getJSONObject(0).put("title", "Alpha");
+        JSONObject second = books.getJSONObject(1).put("title", "Charlie");
+        db.reindex("books", List.of(first, second));
+
+        // another record still has the old value, so it completes to that text
+        assertEquals(List.of("beta"), PrefixIndex.complete(db, "books", "title", "b", 10));
+        assertEquals(List.of("Alpha", "beta", "Charlie"), PrefixIndex.complete(db, "books", "title", "", 10));
+    }
+
+    @Test
+    void testDropsValueNoRecordHasAnyMore() {
+        LazyDatabase db = database(book("1", "Beta"), book("2", "Bravo"));
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(db, "books", "title", "b", 10));
+
+        JSONObject first = db.getJSONArray("books").getJSONObject(0).put("title", "Alpha");
+        db.reindex("books", List.of(first));
+
+        assertEquals(List.of("Alpha", "Bravo"), PrefixIndex.complete(db, "books", "title", "", 10));
+        PrefixIndex index = db.index("prefix:books.title", () -> null);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testKeepsOldValueUntilTransactionCommits() {
+        LazyDatabase committed = database(book("1", "Beta"), book("2", "Bravo"));
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(committed, "books", "title", "b", 10));
+
+        LazyDatabase tx = committed.copyOnWrite();
+        JSONObject first = RecordIndex.find(tx, "books", "1").put("title", "Alpha");
+        tx.reindex("books", List.of(first));
+
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(committed, "books", "title", "", 10));
+        assertEquals(List.of("Alpha", "Bravo"), PrefixIndex.complete(tx, "books", "title", "", 10));
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(committed, "books", "title", "", 10));
+
+        tx.freeze();
+        assertEquals(List.of("Alpha", "Bravo"), PrefixIndex.complete(tx, "books", "title", "", 10));
+        PrefixIndex index = tx.index("prefix:books.title", () -> null);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testPlainDatabaseIsScanned() {
+        JSONObject db = new JSONObject().put("books", new JSONArray()
+                .put(book("1", "Bravo")).put(book("2", "Beta")).put(book("3", "bravo")));
+
+        assertEquals(List.of("Beta", "Bravo"), PrefixIndex.complete(db, "books", "title", "B", 10));
+    }
+
+    @Test
+    void testRejectsNonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PrefixIndex.complete(database(), "books", "title", "a", 0));
+    }
+}
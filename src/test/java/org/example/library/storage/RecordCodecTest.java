@@ -0,0 +1,101 @@
+package org.example.library.storage;
+
+import org.example.library.models.Book;
+import org.example.library.models.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RecordCodec}.
+ */
+class RecordCodecTest {
+
+    private static final String TEST_PATH =
+            System.getProperty("user.dir") + "/test_library.json";
+
+    @BeforeEach
+    void setUp() {
+        FileDatabase.useTestDatabase();
+        FileDatabase.reset();
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        Files.deleteIfExists(Paths.get(TEST_PATH));
+        for (String collection : new String[]{"users", "books", "cds", "loans"}) {
+            Files.deleteIfExists(Paths.get(System.getProperty("user.dir") + "/test_library." + collection + ".json"));
+        }
+    }
+
+    private static JSONObject book(String isbn) {
+        return new JSONObject()
+                .put("title", "Java")
+                .put("author", "Gosling")
+                .put("isbn", isbn)
+                .put("quantity", 2)
+                .put("available", true);
+    }
+
+    @Test
+    void testBookRoundTrip() {
+        Book book = RecordCodec.toBook(RecordCodec.fromBook(new Book("Java", "Gosling", "1", 2, true)));
+
+        assertEquals("Java", book.getTitle());
+        assertEquals("1", book.getIsbn());
+        assertEquals(2, book.getQuantity());
+        assertFalse(book.isBorrowed());
+        assertNull(book.getDueDate());
+    }
+
+    @Test
+    void testBorrowedBookFields() {
+        JSONObject record = book("1").put("borrowed", true).put("dueDate", LocalDate.of(2025, 1, 5).toEpochDay()).put("fine", 3.5);
+
+        Book book = RecordCodec.toBook(record);
+
+        assertTrue(book.isBorrowed());
+        assertEquals(LocalDate.of(2025, 1, 5), book.getDueDate());
+        assertEquals(LocalDate.of(2025, 1, 5).toEpochDay(), book.getDueDay());
+        assertEquals(3.5, book.getFine());
+    }
+
+    @Test
+    void testUserDecoding() {
+        JSONObject db = new JSONObject().put("users", new JSONArray().put(new JSONObject()
+                .put("id", 7).put("username", "sara").put("password", "pw")
+                .put("role", "user").put("email", "sara@mail.com")));
+
+        User user = RecordCodec.users(db).get(0);
+
+        assertEquals(7, user.getId());
+        assertEquals("sara@mail.com", user.getEmail());
+    }
+
+    @Test
+    void testDecodedModelsAreReusedUntilSaved() {
+        JSONObject db = FileDatabase.load();
+        JSONObject record = book("1");
+        db.getJSONArray("books").put(record);
+        FileDatabase.saveRecord(db, "books", record);
+
+        List<Book> first = RecordCodec.books(FileDatabase.load());
+        assertSame(first, RecordCodec.books(FileDatabase.load()));
+
+        record.put("quantity", 1);
+        FileDatabase.saveRecord(db, "books", record);
+
+        List<Book> second = RecordCodec.books(FileDatabase.load());
+        assertNotSame(first, second);
+        assertEquals(1, second.get(0).getQuantity());
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RecordIndex}.
+ */
+class RecordIndexTest {
+
+    private static JSONObject book(String isbn) {
+        return new JSONObject().put("isbn", isbn).put("title", "Book " + isbn);
+    }
+
+    private LazyDatabase database(String... isbns) {
+        JSONArray books = new JSONArray();
+        for (String isbn : isbns) books.put(book(isbn));
+        return new LazyDatabase(new JSONObject(), List.of("books"), collection -> books, this);
+    }
+
+    @Test
+    void testFindsByKey() {
+        LazyDatabase db = database("1", "2", "3");
+
+        assertEquals("Book 2", RecordIndex.find(db, "books", "2").getString("title"));
+        assertEquals(2, RecordIndex.position(db, "books", "3"));
+        assertNull(RecordIndex.find(db, "books", "9"));
+        assertNull(RecordIndex.find(db, "books", null));
+    }
+
+    @Test
+    void testPicksUpAppendedRecords() {
+        LazyDatabase db = database("1");
+        assertNull(RecordIndex.find(db, "books", "2"));
+
+        db.getJSONArray("books").put(book("2"));
+
+        assertEquals(1, RecordIndex.position(db, "books", "2"));
+    }
+
+    @Test
+    void testRebuildsAfterRemoval() {
+        LazyDatabase db = database("1", "2", "3");
+        assertEquals(2, RecordIndex.position(db, "books", "3"));
+
+        db.getJSONArray("books").remove(0);
+
+        assertEquals(1, RecordIndex.position(db, "books", "3"));
+        assertEquals(-1, RecordIndex.position(db, "books", "1"));
+    }
+
+    @Test
+    void testRebuildsAfterRecordsMove() {
+        LazyDatabase db = database("1", "2", "3");
+        assertEquals(0, RecordIndex.position(db, "books", "1"));
+
+        JSONArray books = db.getJSONArray("books");
+        books.put(0, book("3"));
+        books.put(2, book("1"));
+
+        assertEquals(2, RecordIndex.position(db, "books", "1"));
+        assertEquals(0, RecordIndex.position(db, "books", "3"));
+    }
+
+    @Test
+    void testFirstDuplicateWins() {
+        LazyDatabase db = database("1", "2", "1");
+
+        assertEquals(0, RecordIndex.position(db, "books", "1"));
+    }
+
+    @Test
+    void testTransactionVersionSeesItsOwnRecords() {
+        LazyDatabase committed = database("1", "2");
+        RecordIndex.find(committed, "books", "1");
+
+        LazyDatabase tx = committed.copyOnWrite();
+        tx.getJSONArray("books").put(book("3"));
+        RecordIndex.find(tx, "books", "3").put("title", "Changed");
+
+        assertEquals("Changed", tx.getJSONArray("books").getJSONObject(2).getString("title"));
+        assertNull(RecordIndex.find(committed, "books", "3"));
+        assertEquals("Book 2", RecordIndex.find(committed, "books", "2").getString("title"));
+    }
+
+    @Test
+    void testPlainDatabaseIsScanned() {
+        JSONObject db = new JSONObject().put("books", new JSONArray().put(book("1")).put(book("2")));
+
+        assertEquals(1, RecordIndex.position(db, "books", "2"));
+        assertEquals(-1, RecordIndex.position(db, "books", "3"));
+    }
+
+    @Test
+    void testUnkeyedCollectionIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RecordIndex.find(database(), "loans", "1"));
+    }
+}
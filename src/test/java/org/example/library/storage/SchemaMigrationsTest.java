@@ -0,0 +1,58 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SchemaMigrations}.
+ */
+class SchemaMigrationsTest {
+
+    private static JSONObject database(JSONObject book, JSONObject cd) {
+        return new JSONObject()
+                .put("books", new JSONArray().put(book))
+                .put("cds", new JSONArray().put(cd));
+    }
+
+    @Test
+    void testDueDatesBecomeEpochDays() {
+        JSONObject book = new JSONObject().put("isbn", "1").put("dueDate", "2025-1-3");
+        JSONObject cd = new JSONObject().put("id", "c1").put("dueDate", "2025-11-4");
+
+        SchemaMigrations.migrate(database(book, cd), 0);
+
+        assertEquals(LocalDate.of(2025, 1, 3).toEpochDay(), book.getLong("dueDate"));
+        assertEquals(LocalDate.of(2025, 11, 4).toEpochDay(), cd.getLong("dueDate"));
+    }
+
+    @Test
+    void testNullTextBecomesNull() {
+        JSONObject book = new JSONObject().put("isbn", "1").put("dueDate", "null");
+        JSONObject cd = new JSONObject().put("id", "c1").put("dueDate", JSONObject.NULL);
+
+        SchemaMigrations.migrate(database(book, cd), 0);
+
+        assertTrue(book.isNull("dueDate"));
+        assertTrue(cd.isNull("dueDate"));
+    }
+
+    @Test
+    void testCurrentDataIsLeftAlone() {
+        JSONObject book = new JSONObject().put("isbn", "1").put("dueDate", 20091);
+        JSONObject cd = new JSONObject().put("id", "c1");
+        JSONObject before = new JSONObject(database(book, cd).toString());
+
+        JSONObject db = database(book, cd);
+        SchemaMigrations.migrate(db, 0);
+        assertTrue(before.similar(db));
+
+        book.put("dueDate", "2025-1-3");
+        SchemaMigrations.migrate(db, SchemaMigrations.CURRENT);
+        assertEquals("2025-1-3", book.getString("dueDate"));
+    }
+}
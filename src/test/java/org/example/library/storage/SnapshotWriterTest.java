@@ -0,0 +1,122 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SnapshotWriter}.
+ */
+class SnapshotWriterTest {
+
+    private static final Path TEST_FILE =
+            Paths.get(System.getProperty("user.dir"), "test_library_snapshot.json");
+
+    private final SnapshotWriter writer = new SnapshotWriter();
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+        String base = System.getProperty("user.dir") + "/test_library";
+        Files.deleteIfExists(Paths.get(base + ".json"));
+        for (String collection : new String[]{"users", "books", "cds", "loans"}) {
+            Files.deleteIfExists(Paths.get(base + "." + collection + ".json"));
+        }
+    }
+
+    private String write(Object value) throws IOException {
+        try (FileChannel channel = FileChannel.open(TEST_FILE,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer.write(channel, value);
+        }
+        return Files.readString(TEST_FILE);
+    }
+
+    @Test
+    void testOutputMatchesOrgJson() throws IOException {
+        JSONObject record = new JSONObject()
+                .put("title", "Clean \"Code\"\n\\ é – 📘 </b>")
+                .put("quantity", -42)
+                .put("big", 9_000_000_000L)
+                .put("fine", 2.5)
+                .put("available", true)
+                .put("dueDate", JSONObject.NULL)
+                .put("tags", new JSONArray().put("a").put(0));
+
+        String written = write(new JSONArray().put(record).put(new JSONObject()));
+
+        assertEquals(new JSONArray().put(record).put(new JSONObject()).toString(), written);
+        assertTrue(new JSONArray(written).getJSONObject(0).similar(record));
+    }
+
+    @Test
+    void testControlCharactersAreEscaped() throws IOException {
+        String written = write(new JSONObject().put("note", "a\u0001b"));
+
+        assertEquals("{\"note\":\"a\\u0001b\"}", written);
+    }
+
+    @Test
+    void testDocumentLargerThanTheBuffer() throws IOException {
+        JSONArray books = new JSONArray();
+        for (int i = 0; i < 5000; i++) {
+            books.put(new JSONObject().put("isbn", String.valueOf(i)).put("title", "Book title " + i));
+        }
+
+        assertTrue(books.similar(new JSONArray(write(books))));
+    }
+
+    @Test
+    void testSavedSegmentsAreReadBack() {
+        FileDatabase.useTestDatabase();
+        try {
+            JSONObject db = FileDatabase.load();
+            JSONObject book = new JSONObject().put("isbn", "1").put("title", "Ünïcode").put("quantity", 3);
+            db.getJSONArray("books").put(book);
+            FileDatabase.save(db);
+
+            FileDatabase.invalidateCache();
+            JSONObject read = FileDatabase.loadCollection("books").getJSONObject(0);
+            assertTrue(read.similar(book));
+        } finally {
+            FileDatabase.reset();
+        }
+    }
+
+    @Test
+    void testCompressedOutputIsGzipOfSameText() throws IOException {
+        JSONArray books = new JSONArray();
+        for (int i = 0; i < 5000; i++) {
+            books.put(new JSONObject().put("isbn", String.valueOf(i)).put("author", "Robert Martin")
+                    .put("quantity", 3).put("available", true));
+        }
+
+        try (FileChannel channel = FileChannel.open(TEST_FILE,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer.writeCompressed(channel, books, 6);
+        }
+
+        String text;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(TEST_FILE))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(books.toString(), text);
+        assertTrue(Files.size(TEST_FILE) * 5 < text.length());
+
+        // the writer still produces plain output afterwards
+        assertEquals("[1]", write(new JSONArray().put(1)));
+    }
+}
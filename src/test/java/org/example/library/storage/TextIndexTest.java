@@ -0,0 +1,141 @@
+package org.example.library.storage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TextIndex}.
+ */
+class TextIndexTest {
+
+    private static JSONObject book(String isbn, String title) {
+        return new JSONObject().put("isbn", isbn).put("title", title);
+    }
+
+    private LazyDatabase database(JSONObject... books) {
+        JSONArray records = new JSONArray();
+        for (JSONObject b : books) records.put(b);
+        return new LazyDatabase(new JSONObject(), List.of("books"), collection -> records, this);
+    }
+
+    @Test
+    void testSplitsIntoLowercaseWords() {
+        assertEquals(List.of("clean", "code", "2nd", "ed"),
+                List.copyOf(TextIndex.words("Clean Code: 2nd  Ed. code")));
+        assertTrue(TextIndex.words(" -- ").isEmpty());
+        assertTrue(TextIndex.words(null).isEmpty());
+    }
+
+    @Test
+    void testFindsRecordsWithEveryWord() {
+        LazyDatabase db = database(book("1", "Java Programming"), book("2", "Programming in C"),
+                book("3", "Effective Java"));
+
+        assertEquals(List.of(0, 2), TextIndex.withWords(db, "books", "title", "JAVA"));
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "programming java"));
+        assertEquals(List.of(), TextIndex.withWords(db, "books", "title", "jav"));
+        assertEquals(List.of(), TextIndex.withWords(db, "books", "title", "java python"));
+        assertEquals(List.of(), TextIndex.withWords(db, "books", "title", "!"));
+    }
+
+    @Test
+    void testPicksUpAppendedRecords() {
+        LazyDatabase db = database(book("1", "Java"));
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "java"));
+
+        db.getJSONArray("books").put(book("2", "More Java"));
+
+        assertEquals(List.of(0, 1), TextIndex.withWords(db, "books", "title", "java"));
+    }
+
+    @Test
+    void testRebuildsAfterRemoval() {
+        LazyDatabase db = database(book("1", "Java"), book("2", "Go"), book("3", "Java Again"));
+        assertEquals(List.of(0, 2), TextIndex.withWords(db, "books", "title", "java"));
+
+        db.getJSONArray("books").remove(0);
+
+        assertEquals(List.of(1), TextIndex.withWords(db, "books", "title", "java"));
+    }
+
+    @Test
+    void testNeverReturnsRecordChangedInPlace() {
+        LazyDatabase db = database(book("1", "Java"), book("2", "Go"));
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "java"));
+
+        db.getJSONArray("books").getJSONObject(0).put("title", "Rust");
+
+        assertEquals(List.of(), TextIndex.withWords(db, "books", "title", "java"));
+    }
+
+    @Test
+    void testFindsRecordRenamedAndSaved() {
+        LazyDatabase db = database(book("1", "Java Basics"), book("2", "Go"));
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "java"));
+        assertEquals(List.of(0), TextIndex.containing(db, "books", "title", "basic"));
+
+        JSONObject renamed = db.getJSONArray("books").getJSONObject(0).put("title", "Rust Primer");
+        db.reindex("books", List.of(renamed));
+
+        assertEquals(List.of(), TextIndex.withWords(db, "books", "title", "java"));
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "rust"));
+        assertEquals(List.of(), TextIndex.containing(db, "books", "title", "basic"));
+        assertEquals(List.of(0), TextIndex.containing(db, "books", "title", "primer"));
+    }
+
+    @Test
+    void testContainingMatchesSubstrings() {
+        LazyDatabase db = database(book("1", "Sama"), book("2", "ASMAA"), book("3", "Amal"), book("4", "Go"));
+
+        assertEquals(List.of(0, 2), TextIndex.containing(db, "books", "title", "ama"));
+        assertEquals(List.of(0, 1, 2), TextIndex.containing(db, "books", "title", "MA"));
+        assertEquals(List.of(0, 1, 2, 3), TextIndex.containing(db, "books", "title", ""));
+        assertEquals(List.of(), TextIndex.containing(db, "books", "title", "amaa "));
+    }
+
+    @Test
+    void testContainingAgreesWithScan() {
+        Random random = new Random(7);
+        String letters = "abc ";
+        LazyDatabase db = database();
+        JSONArray books = db.getJSONArray("books");
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                books.put(book(round + "-" + i, randomText(random, letters, 12)));
+            }
+            if (round % 5 == 4) books.remove(random.nextInt(books.length()));
+
+            for (int q = 0; q < 20; q++) {
+                String query = randomText(random, letters, 1 + random.nextInt(5));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < books.length(); i++) {
+                    if (books.getJSONObject(i).getString("title").toLowerCase().contains(query)) expected.add(i);
+                }
+                assertEquals(expected, TextIndex.containing(db, "books", "title", query), query);
+            }
+        }
+    }
+
+    private static String randomText(Random random, String letters, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) text.append(letters.charAt(random.nextInt(letters.length())));
+        return text.toString();
+    }
+
+    @Test
+    void testPlainDatabaseIsScanned() {
+        JSONObject db = new JSONObject().put("books", new JSONArray()
+                .put(book("1", "Java Programming")).put(book("2", "Go")));
+
+        assertEquals(List.of(0), TextIndex.withWords(db, "books", "title", "programming"));
+        assertEquals(List.of(0), TextIndex.containing(db, "books", "title", "gram"));
+    }
+}
@@ -7,6 +7,9 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.*;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 class AdminServiceTest1 {
 
     @BeforeAll
@@ -19,6 +22,15 @@ class AdminServiceTest1 {
         FileDatabase.reset();
     }
 
+    @AfterAll
+    static void removeTestDB() throws Exception {
+        String base = System.getProperty("user.dir") + "/test_library";
+        Files.deleteIfExists(Paths.get(base + ".json"));
+        for (String collection : new String[]{"users", "books", "cds", "loans"}) {
+            Files.deleteIfExists(Paths.get(base + "." + collection + ".json"));
+        }
+    }
+
     @Test
     void testValidLogin() {
         JSONObject db = FileDatabase.load();